@@ -0,0 +1,124 @@
+package ru.ifmo.rain.naumkin.arrayset;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ArraySet} against {@link TreeSet} and {@link ConcurrentSkipListSet} on sets of even
+ * numbers, probed with random keys between the first and the last element that hit in half of
+ * the cases. Order {@code custom} uses a comparator that the JDK does not know. Sizes above
+ * a million need a larger heap, pass it with {@code -jvmArgsAppend}; allocation rates are
+ * reported with {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArraySetBenchmark {
+    private static final int PROBES = 1 << 12;
+
+    @Param({"10", "1000", "100000", "10000000", "100000000"})
+    private int size;
+
+    @Param({"ArraySet", "TreeSet", "ConcurrentSkipListSet"})
+    private String impl;
+
+    @Param({"natural", "custom"})
+    private String order;
+
+    private Comparator<Integer> comparator;
+    private List<Integer> shuffled;
+    private List<Integer> sorted;
+    private NavigableSet<Integer> set;
+    private Integer[] probes;
+    private Integer low;
+    private Integer high;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        comparator = "custom".equals(order) ? (a, b) -> Integer.compare(b, a) : null;
+        Integer[] values = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = 2 * i;
+        }
+        sorted = Arrays.asList(values.clone());
+        sorted.sort(comparator);
+        Collections.shuffle(Arrays.asList(values), new Random(size));
+        shuffled = Arrays.asList(values);
+        set = create(shuffled);
+
+        Random random = new Random(PROBES);
+        probes = new Integer[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = random.nextInt(2 * size - 1);
+        }
+        low = set.first();
+        high = set.last();
+    }
+
+    private NavigableSet<Integer> create(Collection<Integer> elements) {
+        switch (impl) {
+            case "ArraySet":
+                return new ArraySet<>(elements, comparator);
+            case "TreeSet":
+                NavigableSet<Integer> tree = new TreeSet<>(comparator);
+                tree.addAll(elements);
+                return tree;
+            case "ConcurrentSkipListSet":
+                NavigableSet<Integer> skipList = new ConcurrentSkipListSet<>(comparator);
+                skipList.addAll(elements);
+                return skipList;
+            default:
+                throw new IllegalArgumentException("Unknown set " + impl);
+        }
+    }
+
+    private Integer probe() {
+        return probes[next++ & (PROBES - 1)];
+    }
+
+    @Benchmark
+    public Object construct() {
+        return create(shuffled);
+    }
+
+    @Benchmark
+    public Object constructSorted() {
+        return create(sorted);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return set.contains(probe());
+    }
+
+    @Benchmark
+    public Integer ceiling() {
+        return set.ceiling(probe());
+    }
+
+    @Benchmark
+    public Integer floor() {
+        return set.floor(probe());
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Integer e : set) {
+            blackhole.consume(e);
+        }
+    }
+
+    @Benchmark
+    public Object views() {
+        Integer e = probe();
+        return set.subSet(low, true, high, true).tailSet(e, true).descendingSet().headSet(e, true);
+    }
+}
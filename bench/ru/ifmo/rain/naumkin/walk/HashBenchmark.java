@@ -0,0 +1,76 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of {@link RecursiveWalk#getHash} on a single file of the given size.
+ * Algorithm {@code stream} is the original {@code FileInputStream} FNV-1 loop, kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBenchmark {
+    private static final int FNV1 = 0x01000193;
+    private static final int FNV2 = 0x811c9dc5;
+
+    @Param({"4096", "1048576", "1073741824"})
+    private long size;
+
+    @Param({"stream", "fnv1", "fnv1-64", "crc32c", "sha256"})
+    private String algorithm;
+
+    private Path file;
+    private HashAlgorithm hash;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        hash = "stream".equals(algorithm) ? null : HashAlgorithm.forName(algorithm);
+        file = Files.createTempFile("hash-bench", ".bin");
+        Random random = new Random(size);
+        byte[] buf = new byte[1 << 20];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += buf.length) {
+                random.nextBytes(buf);
+                out.write(buf, 0, (int) Math.min(buf.length, size - written));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Object hash() {
+        return hash == null ? streamHash(file) : RecursiveWalk.getHash(file, hash);
+    }
+
+    private static int streamHash(Path path) {
+        int hash = FNV2;
+        try (FileInputStream inputStream = new FileInputStream(path.toString())) {
+            int read;
+            byte[] buf = new byte[4096];
+            while ((read = inputStream.read(buf)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    hash *= FNV1;
+                    hash ^= buf[i] & 0xff;
+                }
+            }
+        } catch (IOException e) {
+            hash = 0;
+        }
+        return hash;
+    }
+}
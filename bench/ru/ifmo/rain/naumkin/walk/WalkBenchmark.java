@@ -0,0 +1,125 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Directory traversal and whole {@link RecursiveWalk} runs over synthetic trees.
+ * Cold page cache runs drop the kernel caches before every invocation and need root.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WalkBenchmark {
+    private static final int FILES = 1024;
+    private static final int FILE_SIZE = 4096;
+
+    @State(Scope.Benchmark)
+    public static class Tree {
+        @Param({"deep", "wide"})
+        private String shape;
+
+        private Path root;
+        private Path input;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, InterruptedException {
+            root = Files.createTempDirectory("walk-bench");
+            Random random = new Random(FILES);
+            byte[] data = new byte[FILE_SIZE];
+            Path dir = root;
+            for (int i = 0; i < FILES; i++) {
+                if ("deep".equals(shape) ? i % 32 == 0 : i % 4 == 0) {
+                    dir = ("deep".equals(shape) ? dir : root).resolve("d" + i);
+                    Files.createDirectories(dir);
+                }
+                random.nextBytes(data);
+                Files.write(dir.resolve("f" + i), data);
+            }
+            input = Files.createTempFile("walk-bench", ".in");
+            Files.write(input, Collections.singletonList(root.toString()));
+            new ProcessBuilder("sync").inheritIO().start().waitFor();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            Files.deleteIfExists(input);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Run {
+        @Param({"1", "4"})
+        private int threads;
+
+        @Param({"warm", "cold"})
+        private String pageCache;
+
+        private Path output;
+        private WalkOptions options;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            output = Files.createTempFile("walk-bench", ".out");
+            options = WalkOptions.parse(new String[]{"-j", Integer.toString(threads)}, 0);
+        }
+
+        @Setup(Level.Invocation)
+        public void dropCaches() {
+            if ("cold".equals(pageCache)) {
+                try {
+                    Files.write(Path.of("/proc/sys/vm/drop_caches"), "1".getBytes());
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot drop page cache, run as root: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    @Benchmark
+    public int walkFileTree(Tree tree) throws IOException {
+        int[] count = new int[1];
+        Files.walkFileTree(tree.root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                count[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return count[0];
+    }
+
+    @Benchmark
+    public void endToEnd(Tree tree, Run run) {
+        new RecursiveWalk(run.options).start(tree.input.toString(), run.output.toString());
+    }
+}
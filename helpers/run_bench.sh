@@ -0,0 +1,19 @@
+#!/bin/bash
+
+# JMH jars (jmh-core, jmh-generator-annprocess, jopt-simple, commons-math3) are not
+# bundled, put them into $jmh before running.
+jmh=../lib/jmh
+sourcepath=../java
+bench=../bench
+out=../out/bench
+usage="Usage: run_bench [walk|arrayset] [jmh options]"
+
+if [[ $# < 1 || ! -d "$bench/ru/ifmo/rain/naumkin/$1" ]]
+then
+  echo $usage
+  exit
+fi
+
+mkdir -p $out
+javac -cp "$jmh/*" -sourcepath $sourcepath -d $out $(find "$bench/ru/ifmo/rain/naumkin/$1" -name '*.java') || exit
+java -cp "$out:$jmh/*" org.openjdk.jmh.Main "ru.ifmo.rain.naumkin.$1" "${@:2}"
@@ -0,0 +1,17 @@
+#!/bin/bash
+
+classpath=../lib/junit-4.11.jar:../lib/hamcrest-core-1.3.jar
+sourcepath=../java
+tests=../test
+out=../out/test
+usage="Usage: run_unit [walk]"
+
+if [[ $# != 1 || ! -d "$tests/ru/ifmo/rain/naumkin/$1" ]]
+then
+  echo $usage
+  exit
+fi
+
+mkdir -p $out
+javac -cp $classpath -sourcepath $sourcepath -d $out $(find "$tests/ru/ifmo/rain/naumkin/$1" -name '*.java') || exit
+java -cp "$out:$classpath" org.junit.runner.JUnitCore $(cd $tests && find "ru/ifmo/rain/naumkin/$1" -name '*Test.java' | sed 's/\.java$//; s/\//./g')
@@ -1,22 +1,160 @@
 package ru.ifmo.rain.naumkin.arrayset;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class ArraySet<T extends Comparable<? super T>> extends AbstractSet<T> implements NavigableSet<T> {
-    private final List<T> base;
+    private static final Object[] EMPTY = new Object[0];
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final Object[] elements;
+    private final int from;
+    private final int to;
+    private final boolean reversed;
     private final Comparator<? super T> comparator;
+    private final Comparator<? super T> arrayOrder;
+    private final EytzingerIndex<T> index;
 
     public ArraySet(Collection<T> collection, Comparator<? super T> comp) {
+        this(collection, comp, false);
+    }
+
+    /**
+     * @param searchIndex whether to build an {@link EytzingerIndex} for lookups, which takes
+     *                    another reference and an {@code int} per element
+     */
+    public ArraySet(Collection<T> collection, Comparator<? super T> comp, boolean searchIndex) {
         Objects.requireNonNull(collection);
         this.comparator = comp;
+        this.arrayOrder = comp != null ? comp : Comparator.naturalOrder();
 
         if (!collection.isEmpty()) {
-            TreeSet<T> ts = new TreeSet<>(comp);
-            ts.addAll(collection);
-            this.base = Collections.unmodifiableList(new ArrayList<T>(ts));
+            this.elements = sortedDistinct(collection, comp);
         } else {
-            this.base = Collections.emptyList();
+            this.elements = EMPTY;
+        }
+        this.from = 0;
+        this.to = elements.length;
+        this.reversed = false;
+        this.index = searchIndex && to > 0 ? new EytzingerIndex<>(elements, arrayOrder) : null;
+    }
+
+    /**
+     * Sorts and dedupes elements into an array of the resulting size. A {@code SortedSet} with the
+     * same comparator is copied as is, and input that is already sorted is deduped in one pass.
+     * Inputs of {@value #PARALLEL_THRESHOLD} elements and more are checked, sorted and deduped
+     * in parallel when the common pool has more than one thread.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Object[] sortedDistinct(Collection<T> collection, Comparator<? super T> comp) {
+        T[] array = (T[]) collection.toArray();
+        if (collection instanceof SortedSet && Objects.equals(((SortedSet<?>) collection).comparator(), comp)) {
+            return array;
+        }
+        Comparator<? super T> order = comp != null ? comp : (Comparator<? super T>) Comparator.naturalOrder();
+        if (array.length >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            if (!IntStream.range(1, array.length).parallel().allMatch(i -> order.compare(array[i - 1], array[i]) <= 0)) {
+                parallelSort(array, order);
+            }
+            return distinctParallel(array, order);
+        }
+        if (!isSorted(array, order)) {
+            Arrays.sort(array, order);
+        }
+        int size = 1;
+        for (int i = 1; i < array.length; i++) {
+            if (order.compare(array[size - 1], array[i]) != 0) {
+                array[size++] = array[i];
+            }
+        }
+        return size == array.length ? array : Arrays.copyOf(array, size);
+    }
+
+    /**
+     * Stable parallel merge sort: chunks are sorted by {@link Arrays#sort} in parallel, then pairs
+     * of sorted runs are merged in parallel. {@link Arrays#parallelSort} is not used, as it may
+     * reorder equal elements, and the first of them has to be kept.
+     */
+    private static <T> void parallelSort(T[] array, Comparator<? super T> order) {
+        int parts = ForkJoinPool.getCommonPoolParallelism() * 4;
+        int[] bounds = new int[parts + 1];
+        for (int p = 0; p <= parts; p++) {
+            bounds[p] = (int) ((long) array.length * p / parts);
+        }
+        IntStream.range(0, parts).parallel().forEach(p -> Arrays.sort(array, bounds[p], bounds[p + 1], order));
+
+        Object[] from = array;
+        Object[] to = new Object[array.length];
+        for (int width = 1; width < parts; width *= 2) {
+            Object[] src = from;
+            Object[] dst = to;
+            int step = 2 * width;
+            IntStream.range(0, (parts + step - 1) / step).parallel().forEach(k -> {
+                int low = bounds[k * step];
+                int mid = bounds[Math.min(parts, k * step + step / 2)];
+                int high = bounds[Math.min(parts, k * step + step)];
+                merge(src, dst, low, mid, high, order);
+            });
+            from = dst;
+            to = src;
+        }
+        if (from != array) {
+            System.arraycopy(from, 0, array, 0, array.length);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void merge(Object[] src, Object[] dst, int low, int mid, int high, Comparator<? super T> order) {
+        int i = low;
+        int j = mid;
+        for (int k = low; k < high; k++) {
+            dst[k] = i < mid && (j == high || order.compare((T) src[i], (T) src[j]) <= 0) ? src[i++] : src[j++];
+        }
+    }
+
+    /**
+     * Dedupes a sorted array in chunks: counts kept elements of every chunk, then copies each
+     * chunk to its offset in the result.
+     */
+    private static <T> Object[] distinctParallel(T[] array, Comparator<? super T> order) {
+        int parts = ForkJoinPool.getCommonPoolParallelism() * 4;
+        int chunk = (array.length + parts - 1) / parts;
+        int[] offsets = new int[parts + 1];
+        IntStream.range(0, parts).parallel().forEach(p -> {
+            int count = 0;
+            for (int i = p * chunk, end = Math.min(array.length, i + chunk); i < end; i++) {
+                if (i == 0 || order.compare(array[i - 1], array[i]) != 0) {
+                    count++;
+                }
+            }
+            offsets[p + 1] = count;
+        });
+        for (int p = 0; p < parts; p++) {
+            offsets[p + 1] += offsets[p];
         }
+        if (offsets[parts] == array.length) {
+            return array;
+        }
+        Object[] result = new Object[offsets[parts]];
+        IntStream.range(0, parts).parallel().forEach(p -> {
+            int size = offsets[p];
+            for (int i = p * chunk, end = Math.min(array.length, i + chunk); i < end; i++) {
+                if (i == 0 || order.compare(array[i - 1], array[i]) != 0) {
+                    result[size++] = array[i];
+                }
+            }
+        });
+        return result;
+    }
+
+    private static <T> boolean isSorted(T[] array, Comparator<? super T> order) {
+        for (int i = 1; i < array.length; i++) {
+            if (order.compare(array[i - 1], array[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public ArraySet() {
@@ -31,9 +169,66 @@ public class ArraySet<T extends Comparable<? super T>> extends AbstractSet<T> im
         this(Collections.emptyList(), comp);
     }
 
-    private ArraySet(List<T> list, Comparator<? super T> comp) {
-        this.base = list;
-        this.comparator = comp;
+    /**
+     * Creates a view of {@code elements[from, to)}, which are sorted by {@code arrayOrder}.
+     *
+     * @param reversed   whether the view is in reverse order of the array
+     * @param comparator order of the view
+     */
+    private ArraySet(Object[] elements, int from, int to, boolean reversed, Comparator<? super T> comparator,
+                     Comparator<? super T> arrayOrder, EytzingerIndex<T> index) {
+        this.elements = elements;
+        this.from = from;
+        this.to = to;
+        this.reversed = reversed;
+        this.comparator = comparator;
+        this.arrayOrder = arrayOrder;
+        this.index = index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(int i) {
+        return (T) elements[reversed ? to - 1 - i : from + i];
+    }
+
+    /**
+     * @return the same as {@link Arrays#binarySearch} over {@code elements[from, to)}
+     */
+    @SuppressWarnings("unchecked")
+    private int binarySearch(T e) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = arrayOrder.compare((T) elements[mid], e);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -low - 1;
+    }
+
+    /**
+     * @return the same as {@link Collections#binarySearch} over this set in its order
+     */
+    private int search(T e) {
+        int i = index != null ? index.search(e) : binarySearch(e);
+        int point = Math.min(Math.max(i >= 0 ? i : -(i + 1), from), to);
+        boolean found = i >= 0 && i == point && i < to;
+        if (reversed) {
+            return found ? to - 1 - i : -(to - point) - 1;
+        }
+        return found ? i - from : -(point - from) - 1;
+    }
+
+    private ArraySet<T> view(int low, int high) {
+        return reversed
+                ? new ArraySet<>(elements, to - high, to - low, true, comparator, arrayOrder, index)
+                : new ArraySet<>(elements, from + low, from + high, false, comparator, arrayOrder, index);
     }
 
 
@@ -41,11 +236,11 @@ public class ArraySet<T extends Comparable<? super T>> extends AbstractSet<T> im
     public T lower(T e) {
         Objects.requireNonNull(e);
         int i = indexOfLower(e);
-        return i == -1 ? null : base.get(i);
+        return i == -1 ? null : get(i);
     }
 
     private int indexOfLower(T e) {
-        int i = Collections.binarySearch(base, e, comparator);
+        int i = search(e);
         if (i >= 0) {
             return i - 1;
         }
@@ -56,11 +251,11 @@ public class ArraySet<T extends Comparable<? super T>> extends AbstractSet<T> im
     public T floor(T e) {
         Objects.requireNonNull(e);
         int i = indexOfFloor(e);
-        return i == -1 ? null : base.get(i);
+        return i == -1 ? null : get(i);
     }
 
     private int indexOfFloor(T e) {
-        int i = Collections.binarySearch(base, e, comparator);
+        int i = search(e);
         if (i < 0) {
             i = -(i + 1);
             return i - 1;
@@ -73,11 +268,11 @@ public class ArraySet<T extends Comparable<? super T>> extends AbstractSet<T> im
     public T ceiling(T e) {
         Objects.requireNonNull(e);
         int i = indexOfCeiling(e);
-        return i == base.size() ? null : base.get(i);
+        return i == size() ? null : get(i);
     }
 
     private int indexOfCeiling(T e) {
-        int i = Collections.binarySearch(base, e, comparator);
+        int i = search(e);
         if (i < 0) {
             i = -(i + 1);
         }
@@ -88,11 +283,11 @@ public class ArraySet<T extends Comparable<? super T>> extends AbstractSet<T> im
     public T higher(T e) {
         Objects.requireNonNull(e);
         int i = indexOfHigher(e);
-        return i == base.size() ? null : base.get(i);
+        return i == size() ? null : get(i);
     }
 
     private int indexOfHigher(T e) {
-        int i = Collections.binarySearch(base, e, comparator);
+        int i = search(e);
         if (i >= 0) {
             return i + 1;
         } else {
@@ -113,16 +308,27 @@ public class ArraySet<T extends Comparable<? super T>> extends AbstractSet<T> im
 
     @Override
     public Iterator<T> iterator() {
-        return base.iterator();
+        return new Iterator<T>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < to - from;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(i++);
+            }
+        };
     }
 
     @Override
     public NavigableSet<T> descendingSet() {
-        if (base instanceof ArraySet.ReverseList) {
-            return new ArraySet<T>(new ReverseList<>(((ReverseList<T>) base)), Collections.reverseOrder(comparator));
-        } else {
-            return new ArraySet<>(new ReverseList<>(base, true), Collections.reverseOrder(comparator));
-        }
+        return new ArraySet<>(elements, from, to, !reversed, Collections.reverseOrder(comparator), arrayOrder, index);
     }
 
     @Override
@@ -139,19 +345,19 @@ public class ArraySet<T extends Comparable<? super T>> extends AbstractSet<T> im
         Comparator<? super T> comp = comparator != null ? comparator : Comparator.naturalOrder();
         if (comp.compare(fromElement, toElement) > 0) throw new IllegalArgumentException();
         if (comp.compare(fromElement, toElement) == 0 && (!fromInclusive || !toInclusive)) {
-            return new ArraySet<T>(Collections.emptyList(), comparator);
+            return view(0, 0);
         }
-        return new ArraySet<>(base.subList(from, to + 1), comparator);
+        return view(from, to + 1);
     }
 
     @Override
     public NavigableSet<T> headSet(T toElement, boolean inclusive) {
-        return new ArraySet<>(base.subList(0, (inclusive ? indexOfFloor(toElement) : indexOfLower(toElement)) + 1), comparator);
+        return view(0, (inclusive ? indexOfFloor(toElement) : indexOfLower(toElement)) + 1);
     }
 
     @Override
     public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
-        return new ArraySet<>(base.subList(inclusive ? indexOfCeiling(fromElement) : indexOfHigher(fromElement), base.size()), comparator);
+        return view(inclusive ? indexOfCeiling(fromElement) : indexOfHigher(fromElement), size());
     }
 
     @Override
@@ -179,7 +385,7 @@ public class ArraySet<T extends Comparable<? super T>> extends AbstractSet<T> im
         if (size() == 0) {
             throw new NoSuchElementException();
         }
-        return base.get(0);
+        return get(0);
     }
 
     @Override
@@ -187,18 +393,290 @@ public class ArraySet<T extends Comparable<? super T>> extends AbstractSet<T> im
         if (size() == 0) {
             throw new NoSuchElementException();
         }
-        return base.get(base.size() - 1);
+        return get(size() - 1);
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public boolean contains(Object o) {
-        return Collections.binarySearch(base, (T) o, comparator) >= 0;
+        return search((T) o) >= 0;
     }
 
     @Override
     public int size() {
-        return base.size();
+        return to - from;
+    }
+
+    private Comparator<? super T> order() {
+        return comparator != null ? comparator : Comparator.naturalOrder();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArraySet<T> compatible(Collection<?> c) {
+        return c instanceof ArraySet && Objects.equals(((ArraySet<?>) c).comparator, comparator) ? (ArraySet<T>) c : null;
+    }
+
+    /**
+     * @return first index in {@code [from, set.size())} of an element not less than {@code key}
+     */
+    private static <T extends Comparable<? super T>> int gallop(ArraySet<T> set, int from, T key,
+                                                               Comparator<? super T> order) {
+        int low = from;
+        int step = 1;
+        while (low < set.size() && order.compare(set.get(low), key) < 0) {
+            from = low + 1;
+            low += step;
+            step *= 2;
+        }
+        int high = Math.min(low, set.size());
+        while (from < high) {
+            int mid = (from + high) >>> 1;
+            if (order.compare(set.get(mid), key) < 0) {
+                from = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return from;
+    }
+
+    private ArraySet<T> result(Object[] elements, int size) {
+        return new ArraySet<>(Arrays.copyOf(elements, size), 0, size, false, comparator, order(), null);
+    }
+
+    /**
+     * Merges two sets of the same order in linear time, skipping runs by exponential search.
+     * Other collections are sorted into the result. Equal elements are taken from this set.
+     */
+    public ArraySet<T> union(Collection<? extends T> c) {
+        ArraySet<T> other = compatible(c);
+        if (other == null) {
+            Collection<T> all = new ArrayList<>(this);
+            all.addAll(c);
+            return new ArraySet<>(all, comparator);
+        }
+        Comparator<? super T> order = order();
+        ArraySet<T> a = this;
+        ArraySet<T> b = other;
+        Object[] out = new Object[a.size() + b.size()];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            int cmp = order.compare(a.get(i), b.get(j));
+            if (cmp < 0) {
+                for (int k = gallop(a, i, b.get(j), order); i < k; i++) {
+                    out[size++] = a.get(i);
+                }
+            } else if (cmp > 0) {
+                for (int k = gallop(b, j, a.get(i), order); j < k; j++) {
+                    out[size++] = b.get(j);
+                }
+            } else {
+                out[size++] = a.get(i++);
+                j++;
+            }
+        }
+        while (i < a.size()) {
+            out[size++] = a.get(i++);
+        }
+        while (j < b.size()) {
+            out[size++] = b.get(j++);
+        }
+        return result(out, size);
+    }
+
+    /**
+     * Intersects two sets of the same order in linear time, skipping runs by exponential search.
+     * For other collections, keeps elements they contain.
+     */
+    public ArraySet<T> intersection(Collection<?> c) {
+        ArraySet<T> other = compatible(c);
+        Object[] out = new Object[other == null ? size() : Math.min(size(), other.size())];
+        int size = 0;
+        if (other == null) {
+            for (T e : this) {
+                if (c.contains(e)) {
+                    out[size++] = e;
+                }
+            }
+            return result(out, size);
+        }
+        Comparator<? super T> order = order();
+        ArraySet<T> a = this;
+        ArraySet<T> b = other;
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            int cmp = order.compare(a.get(i), b.get(j));
+            if (cmp < 0) {
+                i = gallop(a, i + 1, b.get(j), order);
+            } else if (cmp > 0) {
+                j = gallop(b, j + 1, a.get(i), order);
+            } else {
+                out[size++] = a.get(i++);
+                j++;
+            }
+        }
+        return result(out, size);
+    }
+
+    /**
+     * Subtracts a set of the same order in linear time, skipping runs by exponential search.
+     * For other collections, drops elements they contain.
+     */
+    public ArraySet<T> difference(Collection<?> c) {
+        ArraySet<T> other = compatible(c);
+        Object[] out = new Object[size()];
+        int size = 0;
+        if (other == null) {
+            for (T e : this) {
+                if (!c.contains(e)) {
+                    out[size++] = e;
+                }
+            }
+            return result(out, size);
+        }
+        Comparator<? super T> order = order();
+        ArraySet<T> a = this;
+        ArraySet<T> b = other;
+        int i = 0;
+        int j = 0;
+        while (i < a.size()) {
+            int cmp = j < b.size() ? order.compare(a.get(i), b.get(j)) : -1;
+            if (cmp < 0) {
+                int k = j < b.size() ? gallop(a, i, b.get(j), order) : a.size();
+                while (i < k) {
+                    out[size++] = a.get(i++);
+                }
+            } else if (cmp > 0) {
+                j = gallop(b, j + 1, a.get(i), order);
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return result(out, size);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        ArraySet<T> other = compatible(c);
+        if (other == null) {
+            return super.containsAll(c);
+        }
+        Comparator<? super T> order = order();
+        int i = 0;
+        for (T e : other) {
+            i = gallop(this, i, e, order);
+            if (i == size() || order.compare(get(i), e) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return cursor for lookups with keys in nondecreasing order of this set
+     */
+    public SortedProbe sortedProbe() {
+        return new SortedProbe();
+    }
+
+    /**
+     * @param probes keys in nondecreasing order of this set
+     */
+    public boolean[] containsEach(List<? extends T> probes) {
+        SortedProbe probe = sortedProbe();
+        boolean[] result = new boolean[probes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = probe.contains(probes.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * @param probes keys in nondecreasing order of this set
+     * @return ceiling of every key, {@code null} where there is none
+     */
+    public List<T> ceilingEach(List<? extends T> probes) {
+        SortedProbe probe = sortedProbe();
+        List<T> result = new ArrayList<>(probes.size());
+        for (T e : probes) {
+            result.add(probe.ceiling(e));
+        }
+        return result;
+    }
+
+    /**
+     * @param probes keys in nondecreasing order of this set
+     * @return floor of every key, {@code null} where there is none
+     */
+    public List<T> floorEach(List<? extends T> probes) {
+        SortedProbe probe = sortedProbe();
+        List<T> result = new ArrayList<>(probes.size());
+        for (T e : probes) {
+            result.add(probe.floor(e));
+        }
+        return result;
+    }
+
+    /**
+     * Lookups that start from the position of the previous key and find the next one by
+     * exponential search, so k sorted keys take about k log(n / k) comparisons instead of
+     * k log n. Works as a mapping function for a sorted sequential stream.
+     */
+    public class SortedProbe {
+        private int position;
+        private T last;
+
+        private SortedProbe() {
+        }
+
+        /**
+         * @return index of the first element not less than {@code e}
+         * @throws IllegalArgumentException if {@code e} is less than the previous key
+         */
+        private int seek(T e) {
+            Objects.requireNonNull(e);
+            Comparator<? super T> order = order();
+            if (last != null && order.compare(e, last) < 0) {
+                throw new IllegalArgumentException("Probes are not sorted");
+            }
+            last = e;
+            position = gallop(ArraySet.this, position, e, order);
+            return position;
+        }
+
+        private boolean found(int i, T e) {
+            return i < size() && order().compare(ArraySet.this.get(i), e) == 0;
+        }
+
+        private T get(int i) {
+            return i < 0 || i >= size() ? null : ArraySet.this.get(i);
+        }
+
+        public boolean contains(T e) {
+            return found(seek(e), e);
+        }
+
+        public T lower(T e) {
+            return get(seek(e) - 1);
+        }
+
+        public T floor(T e) {
+            int i = seek(e);
+            return get(found(i, e) ? i : i - 1);
+        }
+
+        public T ceiling(T e) {
+            return get(seek(e));
+        }
+
+        public T higher(T e) {
+            int i = seek(e);
+            return get(found(i, e) ? i + 1 : i);
+        }
     }
 
     @Override
@@ -230,29 +708,4 @@ public class ArraySet<T extends Comparable<? super T>> extends AbstractSet<T> im
     public boolean removeAll(Collection<?> c) {
         throw new UnsupportedOperationException();
     }
-
-    class ReverseList<T1> extends AbstractList<T1> {
-        private List<T1> list;
-        private boolean reversed;
-
-        ReverseList(ReverseList<T1> reverseList) {
-            list = reverseList.list;
-            reversed = !reverseList.reversed;
-        }
-
-        ReverseList(List<T1> list, boolean reversed) {
-            this.list = list;
-            this.reversed = reversed;
-        }
-
-        @Override
-        public T1 get(int index) {
-            return reversed ? list.get(list.size() - index - 1) : list.get(index);
-        }
-
-        @Override
-        public int size() {
-            return list.size();
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,53 @@
+package ru.ifmo.rain.naumkin.arrayset;
+
+import java.util.Comparator;
+
+/**
+ * Elements of a sorted array in Eytzinger (breadth-first) order, for lower bound searches. Every
+ * step moves from node {@code k} to {@code 2k} or {@code 2k + 1}, so the first levels share a few
+ * cache lines and the next probe is computed without a branch.
+ */
+class EytzingerIndex<T> {
+    private final Object[] tree;
+    private final int[] rank;
+    private final Comparator<? super T> comparator;
+    private final int size;
+
+    EytzingerIndex(Object[] sorted, Comparator<? super T> comparator) {
+        this.size = sorted.length;
+        this.comparator = comparator;
+        tree = new Object[size + 1];
+        rank = new int[size + 1];
+        fill(sorted, 0, 1);
+    }
+
+    private int fill(Object[] sorted, int i, int k) {
+        if (k <= size) {
+            i = fill(sorted, i, 2 * k);
+            tree[k] = sorted[i];
+            rank[k] = i++;
+            i = fill(sorted, i, 2 * k + 1);
+        }
+        return i;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, T b) {
+        return comparator.compare((T) a, b);
+    }
+
+    /**
+     * @return the same as {@link java.util.Collections#binarySearch} over the sorted array
+     */
+    int search(T e) {
+        int k = 1;
+        while (k <= size) {
+            k = 2 * k + (compare(tree[k], e) < 0 ? 1 : 0);
+        }
+        k >>= Integer.numberOfTrailingZeros(~k) + 1;
+        if (k == 0) {
+            return -size - 1;
+        }
+        return compare(tree[k], e) == 0 ? rank[k] : -rank[k] - 1;
+    }
+}
@@ -0,0 +1,308 @@
+package ru.ifmo.rain.naumkin.arrayset;
+
+import java.util.*;
+
+/**
+ * Counterpart of {@link ArraySet} for {@code int} values in natural order, stored in a sorted {@code int[]}.
+ * Views share the array and keep only its bounds. Methods with {@code Int} in their names
+ * and index-based navigation never box.
+ */
+public class IntArraySet extends AbstractSet<Integer> implements NavigableSet<Integer> {
+    private final int[] elements;
+    private final int from;
+    private final int to;
+    private final boolean reversed;
+
+    public IntArraySet() {
+        this(new int[0], 0, 0, false);
+    }
+
+    public IntArraySet(int... values) {
+        this(distinct(values.clone()), false);
+    }
+
+    public IntArraySet(Collection<Integer> collection) {
+        this(distinct(collection.stream().mapToInt(Integer::intValue).toArray()), false);
+    }
+
+    private IntArraySet(int[] sorted, boolean reversed) {
+        this(sorted, 0, sorted.length, reversed);
+    }
+
+    private IntArraySet(int[] elements, int from, int to, boolean reversed) {
+        this.elements = elements;
+        this.from = from;
+        this.to = to;
+        this.reversed = reversed;
+    }
+
+    private static int[] distinct(int[] values) {
+        Arrays.sort(values);
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (size == 0 || values[size - 1] != values[i]) {
+                values[size++] = values[i];
+            }
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private int ceil(int e) {
+        int i = Arrays.binarySearch(elements, from, to, e);
+        return i >= 0 ? i : -(i + 1);
+    }
+
+    private int higher(int e) {
+        int i = Arrays.binarySearch(elements, from, to, e);
+        return i >= 0 ? i + 1 : -(i + 1);
+    }
+
+    private int toIndex(int i) {
+        if (i < from || i >= to) {
+            return -1;
+        }
+        return reversed ? to - 1 - i : i - from;
+    }
+
+    /**
+     * @return index in this set of the greatest element strictly less than {@code e}, or -1
+     */
+    public int indexOfLower(int e) {
+        return toIndex(reversed ? higher(e) : ceil(e) - 1);
+    }
+
+    public int indexOfFloor(int e) {
+        return toIndex(reversed ? ceil(e) : higher(e) - 1);
+    }
+
+    public int indexOfCeiling(int e) {
+        return toIndex(reversed ? higher(e) - 1 : ceil(e));
+    }
+
+    public int indexOfHigher(int e) {
+        return toIndex(reversed ? ceil(e) - 1 : higher(e));
+    }
+
+    public int getInt(int index) {
+        Objects.checkIndex(index, size());
+        return elements[reversed ? to - 1 - index : from + index];
+    }
+
+    public boolean contains(int e) {
+        return Arrays.binarySearch(elements, from, to, e) >= 0;
+    }
+
+    public int firstInt() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getInt(0);
+    }
+
+    public int lastInt() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getInt(size() - 1);
+    }
+
+    public int[] toIntArray() {
+        int[] result = Arrays.copyOfRange(elements, from, to);
+        if (reversed) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                int t = result[i];
+                result[i] = result[j];
+                result[j] = t;
+            }
+        }
+        return result;
+    }
+
+    private Integer get(int index) {
+        return index == -1 ? null : getInt(index);
+    }
+
+    @Override
+    public Integer lower(Integer e) {
+        return get(indexOfLower(e));
+    }
+
+    @Override
+    public Integer floor(Integer e) {
+        return get(indexOfFloor(e));
+    }
+
+    @Override
+    public Integer ceiling(Integer e) {
+        return get(indexOfCeiling(e));
+    }
+
+    @Override
+    public Integer higher(Integer e) {
+        return get(indexOfHigher(e));
+    }
+
+    @Override
+    public Integer pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Integer pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return elements[reversed ? to - 1 - index++ : from + index++];
+            }
+        };
+    }
+
+    @Override
+    public IntArraySet descendingSet() {
+        return new IntArraySet(elements, from, to, !reversed);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    private IntArraySet view(int low, int high) {
+        return new IntArraySet(elements, low, Math.max(low, high), reversed);
+    }
+
+    public IntArraySet subSet(int fromElement, boolean fromInclusive, int toElement, boolean toInclusive) {
+        if (reversed ? fromElement < toElement : fromElement > toElement) {
+            throw new IllegalArgumentException();
+        }
+        if (reversed) {
+            return view(toInclusive ? ceil(toElement) : higher(toElement),
+                    fromInclusive ? higher(fromElement) : ceil(fromElement));
+        }
+        return view(fromInclusive ? ceil(fromElement) : higher(fromElement),
+                toInclusive ? higher(toElement) : ceil(toElement));
+    }
+
+    public IntArraySet headSet(int toElement, boolean inclusive) {
+        if (reversed) {
+            return view(inclusive ? ceil(toElement) : higher(toElement), to);
+        }
+        return view(from, inclusive ? higher(toElement) : ceil(toElement));
+    }
+
+    public IntArraySet tailSet(int fromElement, boolean inclusive) {
+        if (reversed) {
+            return view(from, inclusive ? higher(fromElement) : ceil(fromElement));
+        }
+        return view(inclusive ? ceil(fromElement) : higher(fromElement), to);
+    }
+
+    @Override
+    public IntArraySet subSet(Integer fromElement, boolean fromInclusive, Integer toElement, boolean toInclusive) {
+        return subSet((int) fromElement, fromInclusive, (int) toElement, toInclusive);
+    }
+
+    @Override
+    public IntArraySet headSet(Integer toElement, boolean inclusive) {
+        return headSet((int) toElement, inclusive);
+    }
+
+    @Override
+    public IntArraySet tailSet(Integer fromElement, boolean inclusive) {
+        return tailSet((int) fromElement, inclusive);
+    }
+
+    @Override
+    public Comparator<? super Integer> comparator() {
+        return reversed ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public SortedSet<Integer> subSet(Integer fromElement, Integer toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<Integer> headSet(Integer toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<Integer> tailSet(Integer fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public Integer first() {
+        return firstInt();
+    }
+
+    @Override
+    public Integer last() {
+        return lastInt();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && contains((int) (Integer) o);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash += Integer.hashCode(elements[i]);
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Integer> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean add(Integer t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+}
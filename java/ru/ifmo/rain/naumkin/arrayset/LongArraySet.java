@@ -0,0 +1,308 @@
+package ru.ifmo.rain.naumkin.arrayset;
+
+import java.util.*;
+
+/**
+ * Counterpart of {@link ArraySet} for {@code long} values in natural order, stored in a sorted {@code long[]}.
+ * Views share the array and keep only its bounds. Methods with {@code Long} in their names
+ * and index-based navigation never box.
+ */
+public class LongArraySet extends AbstractSet<Long> implements NavigableSet<Long> {
+    private final long[] elements;
+    private final int from;
+    private final int to;
+    private final boolean reversed;
+
+    public LongArraySet() {
+        this(new long[0], 0, 0, false);
+    }
+
+    public LongArraySet(long... values) {
+        this(distinct(values.clone()), false);
+    }
+
+    public LongArraySet(Collection<Long> collection) {
+        this(distinct(collection.stream().mapToLong(Long::longValue).toArray()), false);
+    }
+
+    private LongArraySet(long[] sorted, boolean reversed) {
+        this(sorted, 0, sorted.length, reversed);
+    }
+
+    private LongArraySet(long[] elements, int from, int to, boolean reversed) {
+        this.elements = elements;
+        this.from = from;
+        this.to = to;
+        this.reversed = reversed;
+    }
+
+    private static long[] distinct(long[] values) {
+        Arrays.sort(values);
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (size == 0 || values[size - 1] != values[i]) {
+                values[size++] = values[i];
+            }
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private int ceil(long e) {
+        int i = Arrays.binarySearch(elements, from, to, e);
+        return i >= 0 ? i : -(i + 1);
+    }
+
+    private int higher(long e) {
+        int i = Arrays.binarySearch(elements, from, to, e);
+        return i >= 0 ? i + 1 : -(i + 1);
+    }
+
+    private int toIndex(int i) {
+        if (i < from || i >= to) {
+            return -1;
+        }
+        return reversed ? to - 1 - i : i - from;
+    }
+
+    /**
+     * @return index in this set of the greatest element strictly less than {@code e}, or -1
+     */
+    public int indexOfLower(long e) {
+        return toIndex(reversed ? higher(e) : ceil(e) - 1);
+    }
+
+    public int indexOfFloor(long e) {
+        return toIndex(reversed ? ceil(e) : higher(e) - 1);
+    }
+
+    public int indexOfCeiling(long e) {
+        return toIndex(reversed ? higher(e) - 1 : ceil(e));
+    }
+
+    public int indexOfHigher(long e) {
+        return toIndex(reversed ? ceil(e) - 1 : higher(e));
+    }
+
+    public long getLong(int index) {
+        Objects.checkIndex(index, size());
+        return elements[reversed ? to - 1 - index : from + index];
+    }
+
+    public boolean contains(long e) {
+        return Arrays.binarySearch(elements, from, to, e) >= 0;
+    }
+
+    public long firstLong() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getLong(0);
+    }
+
+    public long lastLong() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getLong(size() - 1);
+    }
+
+    public long[] toLongArray() {
+        long[] result = Arrays.copyOfRange(elements, from, to);
+        if (reversed) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                long t = result[i];
+                result[i] = result[j];
+                result[j] = t;
+            }
+        }
+        return result;
+    }
+
+    private Long get(int index) {
+        return index == -1 ? null : getLong(index);
+    }
+
+    @Override
+    public Long lower(Long e) {
+        return get(indexOfLower(e));
+    }
+
+    @Override
+    public Long floor(Long e) {
+        return get(indexOfFloor(e));
+    }
+
+    @Override
+    public Long ceiling(Long e) {
+        return get(indexOfCeiling(e));
+    }
+
+    @Override
+    public Long higher(Long e) {
+        return get(indexOfHigher(e));
+    }
+
+    @Override
+    public Long pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Long pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return elements[reversed ? to - 1 - index++ : from + index++];
+            }
+        };
+    }
+
+    @Override
+    public LongArraySet descendingSet() {
+        return new LongArraySet(elements, from, to, !reversed);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    private LongArraySet view(int low, int high) {
+        return new LongArraySet(elements, low, Math.max(low, high), reversed);
+    }
+
+    public LongArraySet subSet(long fromElement, boolean fromInclusive, long toElement, boolean toInclusive) {
+        if (reversed ? fromElement < toElement : fromElement > toElement) {
+            throw new IllegalArgumentException();
+        }
+        if (reversed) {
+            return view(toInclusive ? ceil(toElement) : higher(toElement),
+                    fromInclusive ? higher(fromElement) : ceil(fromElement));
+        }
+        return view(fromInclusive ? ceil(fromElement) : higher(fromElement),
+                toInclusive ? higher(toElement) : ceil(toElement));
+    }
+
+    public LongArraySet headSet(long toElement, boolean inclusive) {
+        if (reversed) {
+            return view(inclusive ? ceil(toElement) : higher(toElement), to);
+        }
+        return view(from, inclusive ? higher(toElement) : ceil(toElement));
+    }
+
+    public LongArraySet tailSet(long fromElement, boolean inclusive) {
+        if (reversed) {
+            return view(from, inclusive ? higher(fromElement) : ceil(fromElement));
+        }
+        return view(inclusive ? ceil(fromElement) : higher(fromElement), to);
+    }
+
+    @Override
+    public LongArraySet subSet(Long fromElement, boolean fromInclusive, Long toElement, boolean toInclusive) {
+        return subSet((long) fromElement, fromInclusive, (long) toElement, toInclusive);
+    }
+
+    @Override
+    public LongArraySet headSet(Long toElement, boolean inclusive) {
+        return headSet((long) toElement, inclusive);
+    }
+
+    @Override
+    public LongArraySet tailSet(Long fromElement, boolean inclusive) {
+        return tailSet((long) fromElement, inclusive);
+    }
+
+    @Override
+    public Comparator<? super Long> comparator() {
+        return reversed ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public SortedSet<Long> subSet(Long fromElement, Long toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<Long> headSet(Long toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<Long> tailSet(Long fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public Long first() {
+        return firstLong();
+    }
+
+    @Override
+    public Long last() {
+        return lastLong();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains((long) (Long) o);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash += Long.hashCode(elements[i]);
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Long> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean add(Long t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,554 @@
+package ru.ifmo.rain.naumkin.arrayset;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Immutable set of fixed-width keys in unsigned lexicographic order, stored sorted in a
+ * memory-mapped file written by {@link KeyWriter}. Opening maps the file without reading it, and
+ * elements are read-only views of the mapping. Views share the mapping and keep only its bounds,
+ * with the same semantics as in {@link ArraySet}. {@link #close} drops the mapping for the set and
+ * all its views; the memory is unmapped once elements read from it are unreachable too.
+ */
+public class MappedArraySet extends AbstractSet<ByteBuffer> implements NavigableSet<ByteBuffer>, Closeable {
+    private static final int MAGIC = 0x4b455953;
+    private static final int HEADER = 16;
+    private static final int SEGMENT = 1 << 30;
+
+    public static final Comparator<ByteBuffer> KEY_ORDER = MappedArraySet::compareKeys;
+
+    private final MappedByteBuffer[] segments;
+    private final int width;
+    private final int keysPerSegment;
+    private final int from;
+    private final int to;
+    private final boolean reversed;
+
+    private MappedArraySet(MappedByteBuffer[] segments, int width, int from, int to, boolean reversed) {
+        this.segments = segments;
+        this.width = width;
+        this.keysPerSegment = SEGMENT / width;
+        this.from = from;
+        this.to = to;
+        this.reversed = reversed;
+    }
+
+    public static MappedArraySet open(Path file) throws IOException {
+        int width;
+        long count;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Unknown key set format " + file);
+            }
+            width = in.readInt();
+            count = in.readLong();
+        }
+        if (width <= 0 || width > SEGMENT || count < 0 || count > Integer.MAX_VALUE) {
+            throw new IOException("Wrong key set header " + file);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != HEADER + count * width) {
+                throw new IOException("Wrong key set size " + file);
+            }
+            long keysPerSegment = SEGMENT / width;
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((count + keysPerSegment - 1) / keysPerSegment)];
+            for (int i = 0; i < segments.length; i++) {
+                long first = i * keysPerSegment;
+                long keys = Math.min(keysPerSegment, count - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + first * width, keys * width);
+            }
+            return new MappedArraySet(segments, width, 0, (int) count, false);
+        }
+    }
+
+    /**
+     * Sorts and dedupes keys of {@code width} bytes and writes them in the format of {@link #open}.
+     * Keys that do not fit in memory are better passed to a {@link KeyWriter} one by one.
+     */
+    public static void write(Path file, int width, Collection<byte[]> keys) throws IOException {
+        for (byte[] key : keys) {
+            if (key.length != width) {
+                throw new IllegalArgumentException("Key of " + key.length + " bytes, expected " + width);
+            }
+        }
+        try (KeyWriter writer = new KeyWriter(file, width)) {
+            for (byte[] key : keys) {
+                writer.add(key);
+            }
+        }
+    }
+
+    /**
+     * Writes keys given in any order in the format of {@link #open} with bounded memory. Keys are
+     * collected in a flat buffer; a full buffer is sorted, deduped and written to a temporary run
+     * file next to the output, and {@link #close} merges the runs into the output.
+     */
+    public static class KeyWriter implements Closeable {
+        private static final int RUN_BYTES = 1 << 26;
+
+        private final Path file;
+        private final int width;
+        private final byte[] run;
+        private final List<Path> runs = new ArrayList<>();
+        private int size;
+        private boolean closed;
+
+        public KeyWriter(Path file, int width) {
+            this(file, width, RUN_BYTES);
+        }
+
+        /**
+         * @param runBytes memory for keys sorted at once
+         */
+        public KeyWriter(Path file, int width, int runBytes) {
+            if (width <= 0 || width > SEGMENT || runBytes < width) {
+                throw new IllegalArgumentException("Wrong key width " + width + " for " + runBytes + " bytes of memory");
+            }
+            this.file = file;
+            this.width = width;
+            this.run = new byte[runBytes / width * width];
+        }
+
+        public void add(byte[] key) throws IOException {
+            if (key.length != width) {
+                throw new IllegalArgumentException("Key of " + key.length + " bytes, expected " + width);
+            }
+            if (size * width == run.length) {
+                spill();
+            }
+            System.arraycopy(key, 0, run, size++ * width, width);
+        }
+
+        private int compare(int i, int j) {
+            return Arrays.compareUnsigned(run, i * width, i * width + width, run, j * width, j * width + width);
+        }
+
+        /**
+         * @return indices of the buffered keys in sorted order, by a merge sort of indices
+         */
+        private int[] sortRun() {
+            int[] order = new int[size];
+            int[] temp = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            for (int step = 1; step < size; step *= 2) {
+                for (int low = 0; low < size - step; low += 2 * step) {
+                    int mid = low + step;
+                    int high = Math.min(size, mid + step);
+                    int i = low;
+                    int j = mid;
+                    for (int k = low; k < high; k++) {
+                        temp[k] = i < mid && (j == high || compare(order[i], order[j]) <= 0) ? order[i++] : order[j++];
+                    }
+                    System.arraycopy(temp, low, order, low, high - low);
+                }
+            }
+            return order;
+        }
+
+        /**
+         * Writes the buffered keys sorted and deduped, and empties the buffer.
+         *
+         * @return number of keys written
+         */
+        private long writeRun(FileChannel channel, ByteBuffer buf) throws IOException {
+            long count = 0;
+            int previous = -1;
+            for (int i : sortRun()) {
+                if (previous < 0 || compare(previous, i) != 0) {
+                    if (buf.remaining() < width) {
+                        drain(channel, buf);
+                    }
+                    buf.put(run, i * width, width);
+                    count++;
+                }
+                previous = i;
+            }
+            drain(channel, buf);
+            size = 0;
+            return count;
+        }
+
+        private void spill() throws IOException {
+            Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".run");
+            runs.add(temp);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writeRun(channel, buffer());
+            }
+        }
+
+        private ByteBuffer buffer() {
+            return ByteBuffer.allocateDirect(Math.max(HEADER, (1 << 20) / width * width));
+        }
+
+        private static class Run {
+            final DataInputStream in;
+            final byte[] key;
+            long left;
+
+            Run(Path file, int width) throws IOException {
+                in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+                key = new byte[width];
+                left = Files.size(file) / width;
+            }
+
+            boolean next() throws IOException {
+                if (left == 0) {
+                    return false;
+                }
+                in.readFully(key);
+                left--;
+                return true;
+            }
+        }
+
+        /**
+         * Merges runs with a heap of their current keys, skipping keys equal to the last written.
+         *
+         * @return number of keys written
+         */
+        private long mergeRuns(FileChannel channel, ByteBuffer buf) throws IOException {
+            PriorityQueue<Run> heap = new PriorityQueue<>((a, b) -> Arrays.compareUnsigned(a.key, b.key));
+            List<Run> open = new ArrayList<>();
+            try {
+                for (Path path : runs) {
+                    Run r = new Run(path, width);
+                    open.add(r);
+                    if (r.next()) {
+                        heap.add(r);
+                    }
+                }
+                long count = 0;
+                byte[] last = null;
+                while (!heap.isEmpty()) {
+                    Run r = heap.poll();
+                    if (last == null || !Arrays.equals(last, r.key)) {
+                        if (buf.remaining() < width) {
+                            drain(channel, buf);
+                        }
+                        buf.put(r.key);
+                        last = r.key.clone();
+                        count++;
+                    }
+                    if (r.next()) {
+                        heap.add(r);
+                    }
+                }
+                drain(channel, buf);
+                return count;
+            } finally {
+                for (Run r : open) {
+                    r.in.close();
+                }
+            }
+        }
+
+        /**
+         * Writes the output and removes the runs.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = buffer();
+                buf.putInt(MAGIC).putInt(width).putLong(0);
+                long count;
+                if (runs.isEmpty()) {
+                    count = writeRun(channel, buf);
+                } else {
+                    if (size > 0) {
+                        spill();
+                    }
+                    count = mergeRuns(channel, buf);
+                }
+                channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, count), HEADER - Long.BYTES);
+            } finally {
+                for (Path path : runs) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    private static int compareKeys(ByteBuffer a, ByteBuffer b) {
+        int i = a.mismatch(b);
+        if (i < 0) {
+            return 0;
+        }
+        if (i < a.remaining() && i < b.remaining()) {
+            return Integer.compare(a.get(a.position() + i) & 0xff, b.get(b.position() + i) & 0xff);
+        }
+        return Integer.compare(a.remaining(), b.remaining());
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Compares key at position {@code i} of the file with {@code key}.
+     */
+    private int compare(int i, ByteBuffer key) {
+        MappedByteBuffer segment = segment(i);
+        int offset = i % keysPerSegment * width;
+        int length = Math.min(width, key.remaining());
+        for (int j = 0; j < length; j++) {
+            int c = Integer.compare(segment.get(offset + j) & 0xff, key.get(key.position() + j) & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(width, key.remaining());
+    }
+
+    private MappedByteBuffer segment(int i) {
+        MappedByteBuffer segment = segments[i / keysPerSegment];
+        if (segment == null) {
+            throw new IllegalStateException("Key set is closed");
+        }
+        return segment;
+    }
+
+    private ByteBuffer key(int i) {
+        int offset = i % keysPerSegment * width;
+        return segment(i).duplicate().position(offset).limit(offset + width).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Drops the mapping, shared with all views of this set, which can no longer be used.
+     */
+    @Override
+    public void close() {
+        Arrays.fill(segments, null);
+    }
+
+    private int lowerBound(ByteBuffer key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(mid, key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(ByteBuffer key) {
+        int i = lowerBound(key);
+        return i < to && compare(i, key) == 0 ? i + 1 : i;
+    }
+
+    private ByteBuffer get(int i) {
+        if (i < from || i >= to) {
+            return null;
+        }
+        return key(i);
+    }
+
+    /**
+     * @return key at position {@code index} of this set
+     */
+    public ByteBuffer getKey(int index) {
+        Objects.checkIndex(index, size());
+        return key(reversed ? to - 1 - index : from + index);
+    }
+
+    @Override
+    public ByteBuffer lower(ByteBuffer e) {
+        return get(reversed ? upperBound(e) : lowerBound(e) - 1);
+    }
+
+    @Override
+    public ByteBuffer floor(ByteBuffer e) {
+        return get(reversed ? lowerBound(e) : upperBound(e) - 1);
+    }
+
+    @Override
+    public ByteBuffer ceiling(ByteBuffer e) {
+        return get(reversed ? upperBound(e) - 1 : lowerBound(e));
+    }
+
+    @Override
+    public ByteBuffer higher(ByteBuffer e) {
+        return get(reversed ? lowerBound(e) - 1 : upperBound(e));
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof ByteBuffer)) {
+            return false;
+        }
+        ByteBuffer key = (ByteBuffer) o;
+        int i = lowerBound(key);
+        return i < to && compare(i, key) == 0;
+    }
+
+    @Override
+    public ByteBuffer pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ByteBuffer pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<ByteBuffer> iterator() {
+        return new Iterator<ByteBuffer>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getKey(index++);
+            }
+        };
+    }
+
+    @Override
+    public MappedArraySet descendingSet() {
+        return new MappedArraySet(segments, width, from, to, !reversed);
+    }
+
+    @Override
+    public Iterator<ByteBuffer> descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    private MappedArraySet view(int low, int high) {
+        return new MappedArraySet(segments, width, low, Math.max(low, high), reversed);
+    }
+
+    @Override
+    public MappedArraySet subSet(ByteBuffer fromElement, boolean fromInclusive, ByteBuffer toElement, boolean toInclusive) {
+        if (comparator().compare(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException();
+        }
+        if (reversed) {
+            return view(toInclusive ? lowerBound(toElement) : upperBound(toElement),
+                    fromInclusive ? upperBound(fromElement) : lowerBound(fromElement));
+        }
+        return view(fromInclusive ? lowerBound(fromElement) : upperBound(fromElement),
+                toInclusive ? upperBound(toElement) : lowerBound(toElement));
+    }
+
+    @Override
+    public MappedArraySet headSet(ByteBuffer toElement, boolean inclusive) {
+        if (reversed) {
+            return view(inclusive ? lowerBound(toElement) : upperBound(toElement), to);
+        }
+        return view(from, inclusive ? upperBound(toElement) : lowerBound(toElement));
+    }
+
+    @Override
+    public MappedArraySet tailSet(ByteBuffer fromElement, boolean inclusive) {
+        if (reversed) {
+            return view(from, inclusive ? upperBound(fromElement) : lowerBound(fromElement));
+        }
+        return view(inclusive ? lowerBound(fromElement) : upperBound(fromElement), to);
+    }
+
+    @Override
+    public Comparator<? super ByteBuffer> comparator() {
+        return reversed ? KEY_ORDER.reversed() : KEY_ORDER;
+    }
+
+    @Override
+    public SortedSet<ByteBuffer> subSet(ByteBuffer fromElement, ByteBuffer toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<ByteBuffer> headSet(ByteBuffer toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<ByteBuffer> tailSet(ByteBuffer fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public ByteBuffer first() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getKey(0);
+    }
+
+    @Override
+    public ByteBuffer last() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return getKey(size() - 1);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends ByteBuffer> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean add(ByteBuffer t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,651 @@
+package ru.ifmo.rain.naumkin.arrayset;
+
+import java.util.*;
+
+/**
+ * Modifiable sorted set over an immutable {@link ArraySet}. Changes go to {@link TreeSet}s of
+ * added and removed elements, which are merged into a new base once they grow past a sixteenth
+ * of it, so a change costs a logarithmic lookup plus amortized constant merge work. Removed
+ * elements are also kept as runs of consecutive base elements, so navigation skips a run at once.
+ * {@link #snapshot()} returns the merged base, which later changes do not affect.
+ * Views are backed by this set, as in {@link TreeSet}. Not thread-safe.
+ */
+public class MutableArraySet<T extends Comparable<? super T>> extends AbstractSet<T> implements NavigableSet<T> {
+    private static final int MIN_DELTA = 64;
+
+    private final Comparator<? super T> comparator;
+    private final TreeSet<T> added;
+    private final TreeSet<T> removed;
+    /**
+     * First element of every maximal run of consecutive removed base elements to its last one.
+     */
+    private final TreeMap<T, T> runs;
+    private final Range all = new Range(null, false, null, false, false);
+    private ArraySet<T> base;
+
+    public MutableArraySet(Collection<T> collection, Comparator<? super T> comp) {
+        this.comparator = comp;
+        this.base = new ArraySet<>(collection, comp);
+        this.added = new TreeSet<>(comp);
+        this.removed = new TreeSet<>(comp);
+        this.runs = new TreeMap<>(comp);
+    }
+
+    public MutableArraySet() {
+        this(Collections.emptyList(), null);
+    }
+
+    public MutableArraySet(Collection<T> collection) {
+        this(collection, null);
+    }
+
+    public MutableArraySet(Comparator<? super T> comp) {
+        this(Collections.emptyList(), comp);
+    }
+
+    /**
+     * @return immutable set of the current elements
+     */
+    public ArraySet<T> snapshot() {
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            base = base.difference(new ArraySet<>(removed, comparator)).union(new ArraySet<>(added, comparator));
+            added.clear();
+            removed.clear();
+            runs.clear();
+        }
+        return base;
+    }
+
+    private void changed() {
+        if (added.size() + removed.size() > Math.max(MIN_DELTA, base.size() >>> 4)) {
+            snapshot();
+        }
+    }
+
+    @Override
+    public boolean add(T e) {
+        Objects.requireNonNull(e);
+        if (added.contains(e)) {
+            return false;
+        }
+        if (removed.contains(e)) {
+            if (base.ceiling(e).equals(e)) {
+                removed.remove(e);
+                splitRun(e);
+                return true;
+            }
+        } else if (base.contains(e)) {
+            return false;
+        }
+        added.add(e);
+        changed();
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+        T e = (T) Objects.requireNonNull(o);
+        if (added.remove(e)) {
+            return true;
+        }
+        if (!base.contains(e) || removed.contains(e)) {
+            return false;
+        }
+        removed.add(e);
+        joinRuns(e);
+        changed();
+        return true;
+    }
+
+    /**
+     * Adds a removed base element to the runs, joining the runs next to it.
+     */
+    private void joinRuns(T e) {
+        T start = e;
+        T end = e;
+        T before = base.lower(e);
+        if (before != null && removed.contains(before)) {
+            start = runs.floorKey(before);
+        }
+        T after = base.higher(e);
+        if (after != null && removed.contains(after)) {
+            end = runs.remove(after);
+        }
+        runs.put(start, end);
+    }
+
+    /**
+     * Removes an element returned to the set from its run, splitting the run around it.
+     */
+    private void splitRun(T e) {
+        Map.Entry<T, T> run = runs.floorEntry(e);
+        runs.remove(run.getKey());
+        if (order().compare(run.getKey(), e) < 0) {
+            runs.put(run.getKey(), base.lower(e));
+        }
+        if (order().compare(e, run.getValue()) < 0) {
+            runs.put(base.higher(e), run.getValue());
+        }
+    }
+
+    @Override
+    public void clear() {
+        base = new ArraySet<T>(comparator);
+        added.clear();
+        removed.clear();
+        runs.clear();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return added.contains(o) || base.contains(o) && !removed.contains(o);
+    }
+
+    @Override
+    public int size() {
+        return base.size() + added.size() - removed.size();
+    }
+
+    private Comparator<? super T> order() {
+        return comparator != null ? comparator : Comparator.naturalOrder();
+    }
+
+    private T min(T a, T b) {
+        return a == null ? b : b == null || order().compare(a, b) <= 0 ? a : b;
+    }
+
+    private T max(T a, T b) {
+        return a == null ? b : b == null || order().compare(a, b) >= 0 ? a : b;
+    }
+
+    /**
+     * @return run of removed elements containing the base element, {@code null} if it is not removed
+     */
+    private Map.Entry<T, T> run(T x) {
+        Map.Entry<T, T> run = x == null ? null : runs.floorEntry(x);
+        return run != null && order().compare(x, run.getValue()) <= 0 ? run : null;
+    }
+
+    private T up(T x) {
+        Map.Entry<T, T> run = run(x);
+        return run == null ? x : base.higher(run.getValue());
+    }
+
+    private T down(T x) {
+        Map.Entry<T, T> run = run(x);
+        return run == null ? x : base.lower(run.getKey());
+    }
+
+    @Override
+    public T lower(T e) {
+        return max(down(base.lower(e)), added.lower(e));
+    }
+
+    @Override
+    public T floor(T e) {
+        return max(down(base.floor(e)), added.floor(e));
+    }
+
+    @Override
+    public T ceiling(T e) {
+        return min(up(base.ceiling(e)), added.ceiling(e));
+    }
+
+    @Override
+    public T higher(T e) {
+        return min(up(base.higher(e)), added.higher(e));
+    }
+
+    private T firstOrNull() {
+        return min(base.isEmpty() ? null : up(base.first()), added.isEmpty() ? null : added.first());
+    }
+
+    private T lastOrNull() {
+        return max(base.isEmpty() ? null : down(base.last()), added.isEmpty() ? null : added.last());
+    }
+
+    @Override
+    public T first() {
+        T e = firstOrNull();
+        if (e == null) {
+            throw new NoSuchElementException();
+        }
+        return e;
+    }
+
+    @Override
+    public T last() {
+        T e = lastOrNull();
+        if (e == null) {
+            throw new NoSuchElementException();
+        }
+        return e;
+    }
+
+    @Override
+    public T pollFirst() {
+        T e = firstOrNull();
+        if (e != null) {
+            remove(e);
+        }
+        return e;
+    }
+
+    @Override
+    public T pollLast() {
+        T e = lastOrNull();
+        if (e != null) {
+            remove(e);
+        }
+        return e;
+    }
+
+    /**
+     * Iterates over the current elements; {@code remove} removes from this set.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Cursor(all, false);
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return new Cursor(all, true);
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return all.descendingSet();
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        return all.subSet(fromElement, fromInclusive, toElement, toInclusive);
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return all.headSet(toElement, inclusive);
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return all.tailSet(fromElement, inclusive);
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    /**
+     * Merges the base, skipping removed elements, with added elements found one by one, so
+     * changes of the set do not invalidate it. If the delta is merged into a new base, both are
+     * positioned again after the last returned element.
+     */
+    private class Cursor implements Iterator<T> {
+        private final Range range;
+        private final boolean down;
+        private ArraySet<T> seen;
+        private Iterator<T> fromBase;
+        private T nextBase;
+        private T nextAdded;
+        private T position;
+        private boolean removable;
+
+        /**
+         * @param down whether to iterate in descending order of the set
+         */
+        Cursor(Range range, boolean down) {
+            this.range = range;
+            this.down = down;
+            seek();
+        }
+
+        private void seek() {
+            seen = base;
+            T from = position;
+            boolean inclusive = false;
+            if (from == null) {
+                from = down ? range.high : range.low;
+                inclusive = down ? range.highInclusive : range.lowInclusive;
+            }
+            if (from == null) {
+                fromBase = down ? base.descendingIterator() : base.iterator();
+                nextAdded = added.isEmpty() ? null : bounded(down ? added.last() : added.first());
+            } else if (down) {
+                fromBase = base.headSet(from, inclusive).descendingIterator();
+                nextAdded = bounded(inclusive ? added.floor(from) : added.lower(from));
+            } else {
+                fromBase = base.tailSet(from, inclusive).iterator();
+                nextAdded = bounded(inclusive ? added.ceiling(from) : added.higher(from));
+            }
+            nextBase = advance();
+        }
+
+        private T bounded(T e) {
+            return e == null || (down ? range.tooLow(e) : range.tooHigh(e)) ? null : e;
+        }
+
+        private T advance() {
+            while (fromBase.hasNext()) {
+                T e = fromBase.next();
+                if (!removed.contains(e)) {
+                    return bounded(e);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (seen != base) {
+                seek();
+            }
+            return nextBase != null || nextAdded != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (nextAdded == null || nextBase != null && (down ? -1 : 1) * order().compare(nextBase, nextAdded) < 0) {
+                position = nextBase;
+                nextBase = advance();
+            } else {
+                position = nextAdded;
+                nextAdded = bounded(down ? added.lower(position) : added.higher(position));
+            }
+            removable = true;
+            return position;
+        }
+
+        @Override
+        public void remove() {
+            if (!removable) {
+                throw new IllegalStateException();
+            }
+            MutableArraySet.this.remove(position);
+            removable = false;
+        }
+    }
+
+    /**
+     * View of the elements between optional bounds, in ascending or descending order of the set.
+     * Bounds are kept in ascending order, {@code null} if there is none.
+     */
+    private class Range extends AbstractSet<T> implements NavigableSet<T> {
+        private final T low;
+        private final boolean lowInclusive;
+        private final T high;
+        private final boolean highInclusive;
+        private final boolean descending;
+
+        Range(T low, boolean lowInclusive, T high, boolean highInclusive, boolean descending) {
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(T e) {
+            if (low == null) {
+                return false;
+            }
+            int c = order().compare(e, low);
+            return c < 0 || c == 0 && !lowInclusive;
+        }
+
+        private boolean tooHigh(T e) {
+            if (high == null) {
+                return false;
+            }
+            int c = order().compare(e, high);
+            return c > 0 || c == 0 && !highInclusive;
+        }
+
+        private boolean inRange(T e) {
+            return !tooLow(e) && !tooHigh(e);
+        }
+
+        /**
+         * @return whether a bound of a subrange lies within this range
+         */
+        private boolean inRange(T e, boolean inclusive) {
+            return inclusive ? inRange(e) : (low == null || order().compare(e, low) >= 0)
+                    && (high == null || order().compare(e, high) <= 0);
+        }
+
+        private T lowest() {
+            T e = low == null ? MutableArraySet.this.firstOrNull() : lowInclusive ? MutableArraySet.this.ceiling(low) : MutableArraySet.this.higher(low);
+            return e == null || tooHigh(e) ? null : e;
+        }
+
+        private T highest() {
+            T e = high == null ? MutableArraySet.this.lastOrNull() : highInclusive ? MutableArraySet.this.floor(high) : MutableArraySet.this.lower(high);
+            return e == null || tooLow(e) ? null : e;
+        }
+
+        private T ceilingInRange(T e) {
+            if (tooLow(e)) {
+                return lowest();
+            }
+            T r = MutableArraySet.this.ceiling(e);
+            return r == null || tooHigh(r) ? null : r;
+        }
+
+        private T higherInRange(T e) {
+            if (tooLow(e)) {
+                return lowest();
+            }
+            T r = MutableArraySet.this.higher(e);
+            return r == null || tooHigh(r) ? null : r;
+        }
+
+        private T floorInRange(T e) {
+            if (tooHigh(e)) {
+                return highest();
+            }
+            T r = MutableArraySet.this.floor(e);
+            return r == null || tooLow(r) ? null : r;
+        }
+
+        private T lowerInRange(T e) {
+            if (tooHigh(e)) {
+                return highest();
+            }
+            T r = MutableArraySet.this.lower(e);
+            return r == null || tooLow(r) ? null : r;
+        }
+
+        @Override
+        public T lower(T e) {
+            return descending ? higherInRange(e) : lowerInRange(e);
+        }
+
+        @Override
+        public T floor(T e) {
+            return descending ? ceilingInRange(e) : floorInRange(e);
+        }
+
+        @Override
+        public T ceiling(T e) {
+            return descending ? floorInRange(e) : ceilingInRange(e);
+        }
+
+        @Override
+        public T higher(T e) {
+            return descending ? lowerInRange(e) : higherInRange(e);
+        }
+
+        private T firstOrNull() {
+            return descending ? highest() : lowest();
+        }
+
+        private T lastOrNull() {
+            return descending ? lowest() : highest();
+        }
+
+        @Override
+        public T first() {
+            T e = firstOrNull();
+            if (e == null) {
+                throw new NoSuchElementException();
+            }
+            return e;
+        }
+
+        @Override
+        public T last() {
+            T e = lastOrNull();
+            if (e == null) {
+                throw new NoSuchElementException();
+            }
+            return e;
+        }
+
+        @Override
+        public T pollFirst() {
+            T e = firstOrNull();
+            if (e != null) {
+                MutableArraySet.this.remove(e);
+            }
+            return e;
+        }
+
+        @Override
+        public T pollLast() {
+            T e = lastOrNull();
+            if (e != null) {
+                MutableArraySet.this.remove(e);
+            }
+            return e;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean contains(Object o) {
+            return inRange((T) Objects.requireNonNull(o)) && MutableArraySet.this.contains(o);
+        }
+
+        @Override
+        public boolean add(T e) {
+            if (!inRange(Objects.requireNonNull(e))) {
+                throw new IllegalArgumentException("Element out of range");
+            }
+            return MutableArraySet.this.add(e);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object o) {
+            return inRange((T) Objects.requireNonNull(o)) && MutableArraySet.this.remove(o);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return lowest() == null;
+        }
+
+        /**
+         * Counts the elements, in linear time.
+         */
+        @Override
+        public int size() {
+            int size = 0;
+            for (Iterator<T> it = iterator(); it.hasNext(); it.next()) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Cursor(this, descending);
+        }
+
+        @Override
+        public Iterator<T> descendingIterator() {
+            return new Cursor(this, !descending);
+        }
+
+        @Override
+        public NavigableSet<T> descendingSet() {
+            return new Range(low, lowInclusive, high, highInclusive, !descending);
+        }
+
+        /**
+         * @return subrange between bounds in ascending order, {@code null} keeps the bound of this range
+         */
+        private Range range(T from, boolean fromInclusive, T to, boolean toInclusive) {
+            if (from != null && to != null && order().compare(from, to) > 0) {
+                throw new IllegalArgumentException("Lower bound is greater than upper bound");
+            }
+            if (from != null && !inRange(from, fromInclusive) || to != null && !inRange(to, toInclusive)) {
+                throw new IllegalArgumentException("Bound out of range");
+            }
+            return from == null && to == null ? this : new Range(
+                    from != null ? from : low, from != null ? fromInclusive : lowInclusive,
+                    to != null ? to : high, to != null ? toInclusive : highInclusive, descending);
+        }
+
+        @Override
+        public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+            Objects.requireNonNull(fromElement);
+            Objects.requireNonNull(toElement);
+            return descending
+                    ? range(toElement, toInclusive, fromElement, fromInclusive)
+                    : range(fromElement, fromInclusive, toElement, toInclusive);
+        }
+
+        @Override
+        public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+            Objects.requireNonNull(toElement);
+            return descending ? range(toElement, inclusive, null, false) : range(null, false, toElement, inclusive);
+        }
+
+        @Override
+        public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+            Objects.requireNonNull(fromElement);
+            return descending ? range(null, false, fromElement, inclusive) : range(fromElement, inclusive, null, false);
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return descending ? Collections.reverseOrder(comparator) : comparator;
+        }
+
+        @Override
+        public SortedSet<T> subSet(T fromElement, T toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<T> headSet(T toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
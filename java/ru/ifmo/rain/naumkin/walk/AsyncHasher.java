@@ -0,0 +1,180 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Hashes files with {@link AsynchronousFileChannel}. Every file has one read in flight at a time,
+ * and the next read is issued from the completion of the previous one after its buffer is hashed.
+ * The number of files being read from one device is limited, and {@link #hash} blocks the caller
+ * while the device is at the limit. The device is looked up once per {@link #setRoot root}, and
+ * files of the root mounted from other devices count against the device of the root. Blocking
+ * reads, such as {@link TreeHasher tree hashes}, run on threads of the hasher under the same limit.
+ */
+public class AsyncHasher implements AutoCloseable {
+    private static final int BUF_SIZE = 1 << 16;
+
+    private final HashAlgorithm algorithm;
+    private final int maxReads;
+    private final ExecutorService executor;
+    private final Map<Object, Semaphore> devices = new ConcurrentHashMap<>();
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private volatile Semaphore device;
+
+    public AsyncHasher(HashAlgorithm algorithm, int maxReads) {
+        this.algorithm = algorithm;
+        this.maxReads = maxReads;
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "async-hasher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        device = devices.computeIfAbsent("", d -> new Semaphore(maxReads));
+    }
+
+    /**
+     * Sets the root, files of which are hashed next.
+     */
+    public void setRoot(String root) {
+        device = devices.computeIfAbsent(deviceOf(root), d -> new Semaphore(maxReads));
+    }
+
+    /**
+     * @return hash of the file, completed exceptionally if the file cannot be read
+     */
+    public CompletableFuture<byte[]> hash(Path path) {
+        CompletableFuture<byte[]> result = acquire();
+        try {
+            AsynchronousFileChannel channel = AsynchronousFileChannel.open(
+                    path, Collections.singleton(StandardOpenOption.READ), executor);
+            new Reader(channel, result).read();
+        } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a blocking read of a file of the current root on a thread of the hasher.
+     *
+     * @return result of the read, completed exceptionally if it fails
+     */
+    public CompletableFuture<byte[]> hash(Callable<byte[]> read) {
+        CompletableFuture<byte[]> result = acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(read.call());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the device of the current root to be below the limit.
+     *
+     * @return future of the read, the device is released when it completes
+     */
+    private CompletableFuture<byte[]> acquire() {
+        Semaphore device = this.device;
+        device.acquireUninterruptibly();
+
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        result.whenComplete((hash, e) -> device.release());
+        return result;
+    }
+
+    private static Object deviceOf(String root) {
+        try {
+            return Files.getAttribute(Paths.get(root), "unix:dev");
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    private class Reader implements CompletionHandler<Integer, Void> {
+        private final AsynchronousFileChannel channel;
+        private final CompletableFuture<byte[]> result;
+        private final Hasher hasher = algorithm.newHasher();
+        private final ByteBuffer buf;
+        private long position = 0;
+
+        Reader(AsynchronousFileChannel channel, CompletableFuture<byte[]> result) {
+            this.channel = channel;
+            this.result = result;
+            ByteBuffer free = buffers.poll();
+            buf = free != null ? free : ByteBuffer.allocateDirect(BUF_SIZE);
+        }
+
+        void read() {
+            buf.clear();
+            channel.read(buf, position, null, this);
+        }
+
+        @Override
+        public void completed(Integer read, Void attachment) {
+            if (read < 0) {
+                finish(hasher.digest());
+                return;
+            }
+            try {
+                buf.flip();
+                hasher.update(buf);
+                position += read;
+                read();
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        @Override
+        public void failed(Throwable e, Void attachment) {
+            fail(e);
+        }
+
+        private void finish(byte[] hash) {
+            release();
+            result.complete(hash);
+        }
+
+        private void fail(Throwable e) {
+            release();
+            result.completeExceptionally(e);
+        }
+
+        private void release() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            buffers.add(buf);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,147 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads output of {@link BinaryWalkWriter} through a memory-mapped window. Hashes are returned
+ * as views of the mapping; paths are rebuilt in a reused buffer and decoded only on request.
+ * Run as {@code BinaryWalkReader <binary> <text>} to convert into the text format.
+ */
+public class BinaryWalkReader implements Closeable {
+    private static final long WINDOW = 1 << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer map;
+    private long mapStart;
+    private final String algorithm;
+    private final int hashLength;
+
+    private byte[] path = new byte[256];
+    private int pathLength;
+    private ByteBuffer hash;
+
+    public BinaryWalkReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            remap(0);
+            if (size < 9 || map.getInt() != BinaryWalkWriter.MAGIC || map.getShort() != BinaryWalkWriter.VERSION) {
+                throw new IOException("Not a binary walk output " + file);
+            }
+            hashLength = map.getShort();
+            byte[] name = new byte[map.get() & 0xff];
+            map.get(name);
+            algorithm = new String(name, StandardCharsets.UTF_8);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getHashLength() {
+        return hashLength;
+    }
+
+    /**
+     * Moves to the next entry.
+     *
+     * @return {@code false} at the end of file
+     */
+    public boolean next() throws IOException {
+        if (mapStart + map.position() >= size) {
+            return false;
+        }
+        if (map.remaining() < 2 * 5 + hashLength + path.length) {
+            remap(mapStart + map.position());
+        }
+        int shared = getVarInt();
+        int rest = getVarInt();
+        if (shared > pathLength || mapStart + map.position() + rest + hashLength > size) {
+            throw new IOException("Broken binary walk output at " + (mapStart + map.position()));
+        }
+        if (map.remaining() < rest + hashLength) {
+            remap(mapStart + map.position());
+        }
+        if (path.length < shared + rest) {
+            path = Arrays.copyOf(path, Math.max(2 * path.length, shared + rest));
+        }
+        map.get(path, shared, rest);
+        pathLength = shared + rest;
+        hash = map.slice().limit(hashLength).asReadOnlyBuffer();
+        map.position(map.position() + hashLength);
+        return true;
+    }
+
+    private int getVarInt() {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = map.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private void remap(long position) throws IOException {
+        mapStart = position;
+        map = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position));
+    }
+
+    /**
+     * @return read-only view of the current hash, valid until the next call of {@link #next()}
+     */
+    public ByteBuffer hash() {
+        return hash.duplicate();
+    }
+
+    public String path() {
+        return new String(path, 0, pathLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a binary output in the original {@code hash path} text format.
+     */
+    public static void toText(Path binary, Path text) throws IOException {
+        try (BinaryWalkReader reader = new BinaryWalkReader(binary);
+             TextWalkWriter writer = new TextWalkWriter(Files.newBufferedWriter(text))) {
+            byte[] hash = new byte[reader.getHashLength()];
+            while (reader.next()) {
+                reader.hash().get(hash);
+                writer.write(hash, reader.path());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) {
+        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
+            System.out.println("Usage: BinaryWalkReader <binary> <text>");
+            return;
+        }
+        try {
+            toText(Paths.get(args[0]), Paths.get(args[1]));
+        } catch (IOException e) {
+            System.out.println("Cannot convert " + e.getMessage());
+        }
+    }
+}
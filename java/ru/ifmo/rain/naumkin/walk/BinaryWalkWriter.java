@@ -0,0 +1,100 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary output. After a header with the hash algorithm, every file is written as
+ * the length of the prefix shared with the previous path and the length of the rest (both
+ * unsigned LEB128), the rest of the UTF-8 path, and the fixed-width hash.
+ * Read it with {@link BinaryWalkReader}.
+ */
+public class BinaryWalkWriter implements WalkWriter {
+    static final int MAGIC = 0x574c4b42;
+    static final short VERSION = 1;
+    private static final int BUF_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final HashAlgorithm algorithm;
+    private ByteBuffer buf = ByteBuffer.allocateDirect(BUF_SIZE);
+    private byte[] previous = new byte[0];
+
+    /**
+     * @param last path of the last entry already in the file, or {@code null} to start a new file
+     */
+    public BinaryWalkWriter(FileChannel channel, HashAlgorithm algorithm, String last) {
+        this.channel = channel;
+        this.algorithm = algorithm;
+        if (last == null) {
+            byte[] name = algorithm.getName().getBytes(StandardCharsets.UTF_8);
+            buf.putInt(MAGIC).putShort(VERSION).putShort((short) algorithm.length())
+                    .put((byte) name.length).put(name);
+        } else {
+            previous = last.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void write(byte[] hash, String name) throws IOException {
+        byte[] path = name.getBytes(StandardCharsets.UTF_8);
+        int shared = 0;
+        int limit = Math.min(path.length, previous.length);
+        while (shared < limit && path[shared] == previous[shared]) {
+            shared++;
+        }
+        int rest = path.length - shared;
+
+        ensure(2 * 5 + rest + algorithm.length());
+        putVarInt(shared);
+        putVarInt(rest);
+        buf.put(path, shared, rest);
+        buf.put(hash);
+        previous = path;
+    }
+
+    @Override
+    public void truncated(String last) {
+        previous = last == null ? new byte[0] : last.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void putVarInt(int value) {
+        while ((value & ~0x7f) != 0) {
+            buf.put((byte) (value & 0x7f | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    private void ensure(int length) throws IOException {
+        if (buf.remaining() < length) {
+            drain();
+            if (buf.capacity() < length) {
+                buf = ByteBuffer.allocateDirect(length);
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically saved position of a {@link RecursiveWalk} run: index of the input line, last path
+ * written for it and the output size after that line, and where the output of the line starts.
+ * A resumed run truncates the output to the saved size, skips earlier input lines and skips files
+ * of the saved root up to the saved path without hashing them. Relies on
+ * {@link java.nio.file.Files#walkFileTree} visiting an unchanged directory in the same order; if
+ * the saved path is not visited again, the output of the root is dropped and it is walked again.
+ * The checkpoint also keeps the input file, the hash and the output format of the run, and
+ * a run with other ones refuses to resume from it.
+ */
+public class Checkpoint {
+    private static final int MAGIC = 0x57434b50;
+    private static final int VERSION = 3;
+
+    private final Path file;
+    private final long interval;
+    private final String input;
+    private final String hashId;
+    private final boolean binary;
+    private FileChannel channel;
+    private WalkWriter writer;
+    private long lastSave = System.nanoTime();
+
+    private long root = -1;
+    private String path;
+    private long offset;
+    private boolean found;
+
+    private long current = -1;
+    private long currentOffset;
+    private String currentPrevious;
+    private String last;
+
+    /**
+     * @param input  input file of the run
+     * @param hashId {@link WalkOptions#getHashId() hash} of the run
+     * @param binary whether the output is written by {@link BinaryWalkWriter}
+     */
+    public Checkpoint(Path file, int seconds, Path input, String hashId, boolean binary) {
+        this.file = file;
+        this.interval = TimeUnit.SECONDS.toNanos(seconds);
+        this.input = input.toAbsolutePath().normalize().toString();
+        this.hashId = hashId;
+        this.binary = binary;
+    }
+
+    public static Path forOutput(Path output) {
+        return output.resolveSibling(output.getFileName() + ".checkpoint");
+    }
+
+    /**
+     * Reads the checkpoint of the interrupted run.
+     *
+     * @return {@code false} if there is no checkpoint
+     * @throws IOException if the checkpoint was saved by a run with other input, hash or format
+     */
+    public boolean load() throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown checkpoint format " + file);
+            }
+            String savedInput = in.readUTF();
+            String savedHashId = in.readUTF();
+            boolean savedBinary = in.readBoolean();
+            if (!input.equals(savedInput) || !hashId.equals(savedHashId) || binary != savedBinary) {
+                throw new IOException("Checkpoint is saved for another run: input " + savedInput
+                        + ", hash " + savedHashId + (savedBinary ? ", binary output " : ", text output ") + file);
+            }
+            root = in.readLong();
+            path = in.readUTF();
+            offset = in.readLong();
+            current = root;
+            currentOffset = in.readLong();
+            currentPrevious = in.readBoolean() ? in.readUTF() : null;
+            last = path;
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return output size at the loaded checkpoint
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return last path written before the loaded checkpoint, {@code null} if there is none
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public void attach(FileChannel channel, WalkWriter writer) {
+        this.channel = channel;
+        this.writer = writer;
+    }
+
+    public boolean skipRoot(long index) {
+        return index < root;
+    }
+
+    /**
+     * @return {@code true} if the file was written before the checkpoint
+     */
+    public boolean skip(long index, String name) {
+        if (index != root || found) {
+            return false;
+        }
+        found = name.equals(path);
+        return true;
+    }
+
+    /**
+     * Called after the root is walked. If the saved path was not visited, for example because
+     * the file was removed, the files after it were skipped as well: the output is truncated to
+     * the start of the root, and the root has to be walked again.
+     *
+     * @return whether the root has to be walked again
+     */
+    public boolean rewind(long index) throws IOException {
+        if (index != root || found) {
+            return false;
+        }
+        found = true;
+        System.out.println("Checkpoint path not found, walking again " + path);
+        writer.flush();
+        channel.truncate(currentOffset);
+        channel.position(currentOffset);
+        writer.truncated(currentPrevious);
+        last = currentPrevious;
+        return true;
+    }
+
+    /**
+     * Called by the thread writing output before each line.
+     */
+    public void writing(long index) throws IOException {
+        if (index != current) {
+            writer.flush();
+            current = index;
+            currentOffset = channel.position();
+            currentPrevious = last;
+        }
+    }
+
+    /**
+     * Called by the thread writing output after each line.
+     */
+    public void written(long index, String name) throws IOException {
+        last = name;
+        long now = System.nanoTime();
+        if (now - lastSave < interval) {
+            return;
+        }
+        lastSave = now;
+        writer.flush();
+        // the checkpoint must not point past output that is not on disk
+        channel.force(false);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(input);
+            out.writeUTF(hashId);
+            out.writeBoolean(binary);
+            out.writeLong(index);
+            out.writeUTF(name);
+            out.writeLong(channel.position());
+            out.writeLong(currentOffset);
+            out.writeBoolean(currentPrevious != null);
+            if (currentPrevious != null) {
+                out.writeUTF(currentPrevious);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the checkpoint after the run has completed.
+     */
+    public void finish() throws IOException {
+        Files.deleteIfExists(file);
+    }
+}
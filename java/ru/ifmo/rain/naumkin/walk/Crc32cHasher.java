@@ -0,0 +1,26 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC-32C, computed by the JDK intrinsic where the CPU supports it.
+ */
+public class Crc32cHasher implements Hasher {
+    private final CRC32C crc = new CRC32C();
+
+    @Override
+    public void update(ByteBuffer buf) {
+        crc.update(buf);
+    }
+
+    @Override
+    public byte[] digest() {
+        return ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array();
+    }
+
+    @Override
+    public void reset() {
+        crc.reset();
+    }
+}
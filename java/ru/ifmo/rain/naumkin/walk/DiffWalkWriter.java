@@ -0,0 +1,60 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+/**
+ * Output of the tree diff mode. Only differences from a previous output are written, one
+ * {@code status hash path} line each: {@code A} for a new path and {@code M} for a changed hash,
+ * in walk order, then {@code D} with the old hash for every path that was not seen, in path order.
+ * {@code D} lines are written only when the walk completes, so a failed walk reports no deletions.
+ */
+public class DiffWalkWriter implements WalkWriter {
+    private final WalkIndex previous;
+    private final BufferedWriter output;
+
+    public DiffWalkWriter(WalkIndex previous, BufferedWriter output) {
+        this.previous = previous;
+        this.output = output;
+    }
+
+    @Override
+    public void write(byte[] hash, String name) throws IOException {
+        int entry = previous.find(name);
+        if (entry < 0) {
+            output.write("A ");
+        } else if (!previous.sameHash(entry, hash)) {
+            output.write("M ");
+        } else {
+            return;
+        }
+        TextWalkWriter.writeLine(output, hash, name);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        for (int i = 0; i < previous.size(); i++) {
+            if (!previous.isFound(i)) {
+                output.write("D ");
+                output.write(previous.hex(i));
+                output.write(' ');
+                output.write(previous.path(i));
+                output.newLine();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            output.close();
+        } finally {
+            previous.close();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Duplicate report mode of {@link RecursiveWalk}. Files are grouped by size first, and only
+ * files sharing their size with another file are read: a prefix hash splits the group further,
+ * and the full hash is computed for what is left. Unless the hash is {@code sha256}, files with
+ * equal hashes are then compared byte by byte, so collisions are not reported. Size groups are
+ * processed in parallel, and clusters are written largest files first, one {@code hash path}
+ * line per file and an empty line after each cluster. A file reached through several paths,
+ * from overlapping roots or by hard links, is listed once under the first of them, as removing
+ * the other paths reclaims no space.
+ */
+public class DuplicateFinder {
+    private static final long PREFIX = 4096;
+    private static final int BUF_SIZE = 1 << 16;
+
+    private final WalkOptions options;
+    private final WalkMetrics metrics;
+    private final BiFunction<Path, BasicFileAttributes, byte[]> hasher;
+    private final Map<Long, List<Entry>> bySize = new TreeMap<>(Collections.reverseOrder());
+    private final Set<Path> seen = new HashSet<>();
+
+    private static class Entry {
+        final Path path;
+        final BasicFileAttributes attrs;
+
+        Entry(Path path, BasicFileAttributes attrs) {
+            this.path = path;
+            this.attrs = attrs;
+        }
+    }
+
+    private static class Cluster {
+        final byte[] hash;
+        final List<Entry> entries;
+
+        Cluster(byte[] hash, List<Entry> entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+    }
+
+    public DuplicateFinder(WalkOptions options, WalkMetrics metrics,
+                           BiFunction<Path, BasicFileAttributes, byte[]> hasher) {
+        this.options = options;
+        this.metrics = metrics;
+        this.hasher = hasher;
+    }
+
+    public void walk(String root) throws IOException {
+        Path path;
+        try {
+            path = Paths.get(root);
+        } catch (InvalidPathException e) {
+            metrics.failed(e.getClass().getSimpleName());
+            return;
+        }
+        WalkFilter filter = options.getFilter();
+        Files.walkFileTree(path, options.getVisitOptions(), filter.getMaxDepth(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return filter.enter(dir) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!filter.accept(file, attrs)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                metrics.visited();
+                if (attrs.isRegularFile() && seen.add(file.toAbsolutePath().normalize())) {
+                    bySize.computeIfAbsent(attrs.size(), size -> new ArrayList<>()).add(new Entry(file, attrs));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                if (!(e instanceof FileSystemLoopException) && filter.accept(file, null)) {
+                    metrics.failed(e.getClass().getSimpleName());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public void report(BufferedWriter writer) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(options.getThreads());
+        try {
+            List<ForkJoinTask<List<Cluster>>> groups = new ArrayList<>();
+            for (Map.Entry<Long, List<Entry>> group : bySize.entrySet()) {
+                List<Entry> files = distinctFiles(group.getValue());
+                if (files.size() > 1) {
+                    long size = group.getKey();
+                    groups.add(pool.submit(() -> clusters(size, files)));
+                }
+            }
+            for (ForkJoinTask<List<Cluster>> group : groups) {
+                for (Cluster cluster : group.join()) {
+                    for (Entry entry : cluster.entries) {
+                        TextWalkWriter.writeLine(writer, cluster.hash, entry.path.toString());
+                    }
+                    writer.newLine();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Splits files of the same size into clusters of duplicates, run in the pool so that parallel
+     * streams use it too.
+     */
+    private List<Cluster> clusters(long size, List<Entry> files) {
+        List<Cluster> candidates = Collections.singletonList(new Cluster(null, files));
+        if (size > PREFIX) {
+            candidates = split(candidates, e -> prefixHash(e.path));
+        }
+        candidates = split(candidates, e -> hasher.apply(e.path, e.attrs));
+        if (options.getAlgorithm() != HashAlgorithm.SHA256) {
+            candidates = confirm(candidates);
+        }
+        return candidates;
+    }
+
+    private byte[] prefixHash(Path path) {
+        try {
+            return RecursiveWalk.read(path, options.getAlgorithm(), PREFIX);
+        } catch (IOException e) {
+            metrics.failed(e.getClass().getSimpleName());
+            return null;
+        }
+    }
+
+    /**
+     * Splits clusters into groups of files with equal contents: the first file of a cluster is
+     * compared with the others, files equal to it form a group, and the rest is split again.
+     */
+    private static List<Cluster> confirm(List<Cluster> clusters) {
+        List<Cluster> result = new ArrayList<>();
+        for (Cluster cluster : clusters) {
+            List<Entry> rest = cluster.entries;
+            while (rest.size() > 1) {
+                Path first = rest.get(0).path;
+                List<Entry> others = rest.subList(1, rest.size());
+                List<Boolean> same = others.parallelStream()
+                        .map(e -> sameContent(first, e.path)).collect(Collectors.toList());
+                List<Entry> group = new ArrayList<>();
+                List<Entry> different = new ArrayList<>();
+                group.add(rest.get(0));
+                for (int i = 0; i < others.size(); i++) {
+                    (same.get(i) ? group : different).add(others.get(i));
+                }
+                if (group.size() > 1) {
+                    result.add(new Cluster(cluster.hash, group));
+                }
+                rest = different;
+            }
+        }
+        return result;
+    }
+
+    private static boolean sameContent(Path a, Path b) {
+        try (InputStream first = Files.newInputStream(a); InputStream second = Files.newInputStream(b)) {
+            byte[] buf1 = new byte[BUF_SIZE];
+            byte[] buf2 = new byte[BUF_SIZE];
+            while (true) {
+                int read1 = first.readNBytes(buf1, 0, BUF_SIZE);
+                int read2 = second.readNBytes(buf2, 0, BUF_SIZE);
+                if (!Arrays.equals(buf1, 0, read1, buf2, 0, read2)) {
+                    return false;
+                }
+                if (read1 < BUF_SIZE) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Keeps the first entry of every {@link BasicFileAttributes#fileKey() file key}.
+     */
+    private static List<Entry> distinctFiles(List<Entry> entries) {
+        Set<Object> keys = new HashSet<>();
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            Object key = entry.attrs.fileKey();
+            if (key == null || keys.add(key)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private List<Cluster> split(List<Cluster> clusters, Function<Entry, byte[]> hash) {
+        List<Cluster> result = new ArrayList<>();
+        for (Cluster cluster : clusters) {
+            byte[][] hashes = cluster.entries.parallelStream().map(hash).toArray(byte[][]::new);
+            Map<ByteBuffer, List<Entry>> byHash = new LinkedHashMap<>();
+            for (int i = 0; i < hashes.length; i++) {
+                // files that cannot be read are left out
+                if (hashes[i] != null) {
+                    byHash.computeIfAbsent(ByteBuffer.wrap(hashes[i]), h -> new ArrayList<>()).add(cluster.entries.get(i));
+                }
+            }
+            for (Map.Entry<ByteBuffer, List<Entry>> entries : byHash.entrySet()) {
+                if (entries.getValue().size() > 1) {
+                    result.add(new Cluster(entries.getKey().array(), entries.getValue()));
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,44 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 64-bit FNV-1.
+ */
+public class Fnv64Hasher implements Hasher {
+    private static final long FNV1 = 0x00000100000001b3L;
+    private static final long FNV2 = 0xcbf29ce484222325L;
+
+    private long hash = FNV2;
+
+    @Override
+    public void update(ByteBuffer buf) {
+        long h = hash;
+        while (buf.remaining() >= Long.BYTES) {
+            long v = buf.getLong();
+            if (buf.order() == ByteOrder.LITTLE_ENDIAN) {
+                v = Long.reverseBytes(v);
+            }
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                h *= FNV1;
+                h ^= (v >>> shift) & 0xff;
+            }
+        }
+        while (buf.hasRemaining()) {
+            h *= FNV1;
+            h ^= buf.get() & 0xff;
+        }
+        hash = h;
+    }
+
+    @Override
+    public byte[] digest() {
+        return ByteBuffer.allocate(Long.BYTES).putLong(hash).array();
+    }
+
+    @Override
+    public void reset() {
+        hash = FNV2;
+    }
+}
@@ -0,0 +1,44 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 32-bit FNV-1, the hash {@link RecursiveWalk} always produced.
+ */
+public class FnvHasher implements Hasher {
+    private static final int FNV1 = 0x01000193;
+    private static final int FNV2 = 0x811c9dc5;
+
+    private int hash = FNV2;
+
+    @Override
+    public void update(ByteBuffer buf) {
+        int h = hash;
+        while (buf.remaining() >= Long.BYTES) {
+            long v = buf.getLong();
+            if (buf.order() == ByteOrder.LITTLE_ENDIAN) {
+                v = Long.reverseBytes(v);
+            }
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                h *= FNV1;
+                h ^= (int) (v >>> shift) & 0xff;
+            }
+        }
+        while (buf.hasRemaining()) {
+            h *= FNV1;
+            h ^= buf.get() & 0xff;
+        }
+        hash = h;
+    }
+
+    @Override
+    public byte[] digest() {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(hash).array();
+    }
+
+    @Override
+    public void reset() {
+        hash = FNV2;
+    }
+}
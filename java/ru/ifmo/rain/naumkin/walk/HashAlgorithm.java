@@ -0,0 +1,89 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.function.Supplier;
+
+/**
+ * Hash functions available to {@link RecursiveWalk}, selected with {@code --hash NAME}.
+ */
+public enum HashAlgorithm {
+    FNV1("fnv1", Integer.BYTES, FnvHasher::new),
+    FNV1_64("fnv1-64", Long.BYTES, Fnv64Hasher::new),
+    CRC32C("crc32c", Integer.BYTES, Crc32cHasher::new),
+    SHA256("sha256", 32, Sha256Hasher::new);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String name;
+    private final int length;
+    private final Supplier<Hasher> factory;
+    private final ThreadLocal<Hasher> hasher;
+
+    HashAlgorithm(String name, int length, Supplier<Hasher> factory) {
+        this.name = name;
+        this.length = length;
+        this.factory = factory;
+        this.hasher = ThreadLocal.withInitial(factory);
+    }
+
+    public static HashAlgorithm forName(String name) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.name.equals(name)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown hash algorithm: " + name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return hash length in bytes
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return reset hasher owned by the calling thread
+     */
+    public Hasher hasher() {
+        Hasher h = hasher.get();
+        h.reset();
+        return h;
+    }
+
+    /**
+     * @return new hasher, for hashing that moves between threads
+     */
+    public Hasher newHasher() {
+        return factory.get();
+    }
+
+    /**
+     * @return hash written for files that cannot be read; it is a valid hash of some files too,
+     * so failed reads are reported by hashers as {@code null} and replaced only in the output
+     */
+    public byte[] zero() {
+        return new byte[length];
+    }
+
+    public static void writeHex(Writer out, byte[] hash) throws IOException {
+        for (byte b : hash) {
+            out.write(HEX[(b >> 4) & 0xf]);
+            out.write(HEX[b & 0xf]);
+        }
+    }
+
+    public static String toHex(byte[] hash) {
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
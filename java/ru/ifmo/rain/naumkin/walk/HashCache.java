@@ -0,0 +1,131 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk cache of file hashes from the previous run, keyed by path, size and modification time.
+ * Only files visited during the current run are written back, so removed files drop out.
+ */
+public class HashCache {
+    private static final int MAGIC = 0x57414c4b;
+    private static final int VERSION = 2;
+
+    private final Path file;
+    private final HashAlgorithm algorithm;
+    private final String id;
+    private final Map<String, Entry> previous = new ConcurrentHashMap<>();
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        final long size;
+        final long modified;
+        final byte[] hash;
+
+        Entry(long size, long modified, byte[] hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        boolean matches(long size, long modified) {
+            return this.size == size && this.modified == modified;
+        }
+    }
+
+    /**
+     * @param id identifies how hashes were computed, a cache with another id is ignored
+     */
+    public HashCache(Path file, HashAlgorithm algorithm, String id) {
+        this.file = file;
+        this.algorithm = algorithm;
+        this.id = id;
+    }
+
+    public static Path forOutput(Path output) {
+        return output.resolveSibling(output.getFileName() + ".cache");
+    }
+
+    public void load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.out.println("Ignoring hash cache of unknown format " + file);
+                return;
+            }
+            if (!id.equals(in.readUTF())) {
+                return;
+            }
+            while (true) {
+                String path;
+                try {
+                    path = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                long size = in.readLong();
+                long modified = in.readLong();
+                byte[] hash = new byte[algorithm.length()];
+                in.readFully(hash);
+                previous.put(path, new Entry(size, modified, hash));
+            }
+        } catch (NoSuchFileException ignored) {
+        } catch (IOException e) {
+            previous.clear();
+            System.out.println("Ignoring broken hash cache " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return hash from the previous run if the file has not changed since, {@code null} otherwise
+     */
+    public byte[] lookup(Path path, BasicFileAttributes attrs) {
+        String key = path.toString();
+        Entry entry = previous.get(key);
+        if (entry == null || !entry.matches(attrs.size(), modified(attrs))) {
+            return null;
+        }
+        current.put(key, entry);
+        return entry.hash;
+    }
+
+    /**
+     * @param hash hash of the file, {@code null} if it cannot be read and is not cached
+     */
+    public void put(Path path, BasicFileAttributes attrs, byte[] hash) {
+        if (hash != null) {
+            current.put(path.toString(), new Entry(attrs.size(), modified(attrs), hash));
+        }
+    }
+
+    private static long modified(BasicFileAttributes attrs) {
+        return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    public void save() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(id);
+            for (Map.Entry<String, Entry> e : current.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().modified);
+                out.write(e.getValue().hash);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
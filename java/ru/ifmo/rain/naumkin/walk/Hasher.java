@@ -0,0 +1,23 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming file hash. Implementations consume whole {@link ByteBuffer} slices
+ * and are reused between files via {@link #reset()}.
+ */
+public interface Hasher {
+    /**
+     * Consumes all remaining bytes of the buffer.
+     *
+     * @param buffer data to hash, position is moved to the limit
+     */
+    void update(ByteBuffer buffer);
+
+    /**
+     * @return big-endian hash of all data passed since the last reset
+     */
+    byte[] digest();
+
+    void reset();
+}
@@ -0,0 +1,47 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Remembers hashes by {@link BasicFileAttributes#fileKey()} for one run, so hard links and
+ * files seen again through overlapping roots are read only once. Concurrent requests for the
+ * same file wait for the first reader instead of reading it again.
+ */
+public class InodeCache {
+    private final Map<Object, CompletableFuture<byte[]>> hashes = new ConcurrentHashMap<>();
+
+    public byte[] hash(Path path, BasicFileAttributes attrs, BiFunction<Path, BasicFileAttributes, byte[]> hasher) {
+        return hashAsync(path, attrs, (p, a) -> CompletableFuture.completedFuture(hasher.apply(p, a))).join();
+    }
+
+    public CompletableFuture<byte[]> hashAsync(Path path, BasicFileAttributes attrs,
+                                               BiFunction<Path, BasicFileAttributes, CompletableFuture<byte[]>> hasher) {
+        Object key = attrs.fileKey();
+        if (key == null || attrs.isSymbolicLink()) {
+            return hasher.apply(path, attrs);
+        }
+
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> previous = hashes.putIfAbsent(key, future);
+        if (previous != null) {
+            return previous;
+        }
+        try {
+            hasher.apply(path, attrs).whenComplete((hash, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(hash);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
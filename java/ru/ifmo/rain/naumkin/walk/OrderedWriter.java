@@ -0,0 +1,135 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.IOException;
+
+/**
+ * Asynchronous output stage for concurrent hashing. The producer reserves sequence numbers in
+ * visit order, workers complete them in any order, and a single writer thread emits lines in
+ * sequence order. At most {@code capacity} lines are reserved but not yet written, so memory
+ * does not depend on the number of files.
+ */
+public class OrderedWriter implements AutoCloseable {
+    private final WalkWriter output;
+    private final byte[][] hashes;
+    private final String[] names;
+    private final long[] roots;
+    private final Checkpoint checkpoint;
+    private final Thread writer;
+
+    private long reserved = 0;
+    private long written = 0;
+    private boolean closed = false;
+    private IOException error;
+
+    public OrderedWriter(WalkWriter output, int capacity) {
+        this(output, capacity, null);
+    }
+
+    /**
+     * @param checkpoint notified after every written line, may be {@code null}
+     */
+    public OrderedWriter(WalkWriter output, int capacity, Checkpoint checkpoint) {
+        this.output = output;
+        this.checkpoint = checkpoint;
+        hashes = new byte[capacity][];
+        names = new String[capacity];
+        roots = new long[capacity];
+        writer = new Thread(this::run, "ordered-writer");
+        writer.start();
+    }
+
+    /**
+     * Reserves next sequence number, waiting while the reorder buffer is full.
+     *
+     * @param root index of the input line the file belongs to
+     * @return sequence number to pass to {@link #complete}
+     * @throws IOException if the writer thread has failed
+     */
+    public synchronized long reserve(long root) throws IOException {
+        try {
+            while (error == null && reserved - written >= names.length) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for output", e);
+        }
+        if (error != null) {
+            throw error;
+        }
+        roots[(int) (reserved % names.length)] = root;
+        return reserved++;
+    }
+
+    public synchronized void complete(long sequence, byte[] hash, String name) {
+        int slot = (int) (sequence % names.length);
+        hashes[slot] = hash;
+        names[slot] = name;
+        notifyAll();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                byte[] hash;
+                String name;
+                long root;
+                synchronized (this) {
+                    int slot = (int) (written % names.length);
+                    while (names[slot] == null && !(closed && written == reserved)) {
+                        wait();
+                    }
+                    if (names[slot] == null) {
+                        return;
+                    }
+                    hash = hashes[slot];
+                    name = names[slot];
+                    root = roots[slot];
+                }
+
+                if (checkpoint != null) {
+                    checkpoint.writing(root);
+                }
+                output.write(hash, name);
+                if (checkpoint != null) {
+                    checkpoint.written(root, name);
+                }
+
+                synchronized (this) {
+                    int slot = (int) (written % names.length);
+                    hashes[slot] = null;
+                    names[slot] = null;
+                    written++;
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                error = e;
+                notifyAll();
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * Waits until every reserved line is written.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for output", e);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiFunction;
+
+/**
+ * Walks roots in the same order as {@link RecursiveWalk.CustomFileVisitor}, but hashes files
+ * on a work-stealing {@link ForkJoinPool}. Results go through an {@link OrderedWriter},
+ * which writes them in visit order.
+ */
+public class ParallelWalker implements AutoCloseable {
+    private static final int PENDING_PER_THREAD = 64;
+
+    private final ForkJoinPool pool;
+    private final OrderedWriter output;
+    private final WalkOptions options;
+    private final WalkMetrics metrics;
+    private final Checkpoint checkpoint;
+    private final HashAlgorithm algorithm;
+    private final BiFunction<Path, BasicFileAttributes, byte[]> hasher;
+    private final BiFunction<Path, BasicFileAttributes, CompletableFuture<byte[]>> asyncHasher;
+
+    public ParallelWalker(WalkOptions options, WalkWriter writer, WalkMetrics metrics, Checkpoint checkpoint,
+                          BiFunction<Path, BasicFileAttributes, byte[]> hasher) {
+        this(options, writer, metrics, checkpoint, hasher, null);
+    }
+
+    /**
+     * Creates walker, that hashes files with {@code asyncHasher} if it is not {@code null}.
+     * {@code checkpoint} may be {@code null} too.
+     */
+    public ParallelWalker(WalkOptions options, WalkWriter writer, WalkMetrics metrics, Checkpoint checkpoint,
+                          BiFunction<Path, BasicFileAttributes, byte[]> hasher,
+                          BiFunction<Path, BasicFileAttributes, CompletableFuture<byte[]>> asyncHasher) {
+        pool = new ForkJoinPool(options.getThreads());
+        output = new OrderedWriter(writer, options.getThreads() * PENDING_PER_THREAD, checkpoint);
+        this.options = options;
+        this.metrics = metrics;
+        this.checkpoint = checkpoint;
+        this.algorithm = options.getAlgorithm();
+        this.hasher = hasher;
+        this.asyncHasher = asyncHasher;
+    }
+
+    /**
+     * @param index index of the root in the input
+     */
+    public void walk(long index, String root) throws IOException {
+        walkRoot(index, root);
+        if (checkpoint != null && checkpoint.rewind(index)) {
+            walkRoot(index, root);
+        }
+    }
+
+    private void walkRoot(long index, String root) throws IOException {
+        Path path;
+        try {
+            path = Paths.get(root);
+        } catch (InvalidPathException e) {
+            metrics.failed(e.getClass().getSimpleName());
+            if (checkpoint == null || !checkpoint.skip(index, root)) {
+                submit(index, root, null, null);
+            }
+            return;
+        }
+        Files.walkFileTree(path, options.getVisitOptions(), options.getFilter().getMaxDepth(), new SubmittingVisitor(index));
+    }
+
+    private class SubmittingVisitor extends SimpleFileVisitor<Path> {
+        private final long index;
+
+        SubmittingVisitor(long index) {
+            this.index = index;
+        }
+
+        private void submit(Path path, BasicFileAttributes attrs) throws IOException {
+            String name = path.toString();
+            if (checkpoint == null || !checkpoint.skip(index, name)) {
+                ParallelWalker.this.submit(index, name, attrs == null ? null : path, attrs);
+            }
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            return options.getFilter().enter(dir) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path path, BasicFileAttributes fileAttributes) throws IOException {
+            if (!options.getFilter().accept(path, fileAttributes)) {
+                return FileVisitResult.CONTINUE;
+            }
+            metrics.visited();
+            submit(path, fileAttributes);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path path, IOException e) throws IOException {
+            if (e instanceof FileSystemLoopException || !options.getFilter().accept(path, null)) {
+                return FileVisitResult.CONTINUE;
+            }
+            metrics.failed(e.getClass().getSimpleName());
+            submit(path, null);
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    private class HashTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long sequence;
+        private final String name;
+        private final Path path;
+        private final BasicFileAttributes attrs;
+
+        HashTask(long sequence, String name, Path path, BasicFileAttributes attrs) {
+            this.sequence = sequence;
+            this.name = name;
+            this.path = path;
+            this.attrs = attrs;
+        }
+
+        @Override
+        protected void compute() {
+            byte[] hash = null;
+            try {
+                if (path != null) {
+                    hash = hasher.apply(path, attrs);
+                }
+            } finally {
+                output.complete(sequence, hash != null ? hash : algorithm.zero(), name);
+            }
+        }
+    }
+
+    private void submit(long index, String name, Path path, BasicFileAttributes attrs) throws IOException {
+        long sequence = output.reserve(index);
+        if (asyncHasher != null && path != null) {
+            asyncHasher.apply(path, attrs).whenComplete((hash, e) ->
+                    output.complete(sequence, hash != null ? hash : algorithm.zero(), name));
+        } else {
+            pool.execute(new HashTask(sequence, name, path, attrs));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            output.close();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
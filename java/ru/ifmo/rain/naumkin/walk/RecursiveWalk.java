@@ -1,7 +1,10 @@
 package ru.ifmo.rain.naumkin.walk;
 
 import java.io.BufferedReader;
-import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
@@ -9,33 +12,69 @@ import java.nio.file.Paths;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemLoopException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 public class RecursiveWalk {
 
+    private final WalkOptions options;
+    private final WalkMetrics metrics = new WalkMetrics();
+    private HashCache cache;
+    private InodeCache inodes;
+    private AsyncHasher async;
+    private Checkpoint checkpoint;
+    private TreeHasher tree;
+
+    public RecursiveWalk() {
+        this(new WalkOptions());
+    }
+
+    public RecursiveWalk(WalkOptions options) {
+        this.options = options;
+    }
+
     public static void main(String[] args) {
-        if (args.length != 2) {
+        if (args == null || args.length < 2 || args[0] == null || args[1] == null) {
             System.out.println("Wrong input.");
-        } else {
-            RecursiveWalk rwalk = new RecursiveWalk();
-            rwalk.start(args[0], args[1]);
+            return;
+        }
+
+        WalkOptions options;
+        try {
+            options = WalkOptions.parse(args, 2);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
         }
+
+        RecursiveWalk rwalk = new RecursiveWalk(options);
+        rwalk.start(args[0], args[1]);
     }
     
     public class CustomFileVisitor extends SimpleFileVisitor<Path> {
 
-        private BufferedWriter output;
+        private WalkWriter output;
+        private long index;
 
-        CustomFileVisitor(BufferedWriter writer) {
+        CustomFileVisitor(WalkWriter writer) {
             output = writer;
         }
 
-        private FileVisitResult writeToFile(String contents) {
+        private FileVisitResult writeToFile(byte[] hash, Path path) {
             try {
-                output.write(contents);
-                output.newLine();
+                if (checkpoint != null) {
+                    checkpoint.writing(index);
+                }
+                output.write(hash != null ? hash : options.getAlgorithm().zero(), path.toString());
+                if (checkpoint != null) {
+                    checkpoint.written(index, path.toString());
+                }
                 return FileVisitResult.CONTINUE;
             } catch (IOException e) {
                 System.out.println(e.getMessage());
@@ -43,19 +82,55 @@ public class RecursiveWalk {
             }
         }
 
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            return options.getFilter().enter(dir) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+        }
+
         @Override
         public FileVisitResult visitFile(Path path, BasicFileAttributes fileAttributes) {
-            return writeToFile(String.format("%08x %s", RecursiveWalk.getHash(path), path.toString()));
+            if (!options.getFilter().accept(path, fileAttributes)) {
+                return FileVisitResult.CONTINUE;
+            }
+            metrics.visited();
+            if (checkpoint != null && checkpoint.skip(index, path.toString())) {
+                return FileVisitResult.CONTINUE;
+            }
+            return writeToFile(hash(path, fileAttributes), path);
         }
 
         @Override
         public FileVisitResult visitFileFailed(Path path, IOException e) {
-            return writeToFile("00000000 " + path.toString());
+            if (e instanceof FileSystemLoopException || !options.getFilter().accept(path, null)) {
+                return FileVisitResult.CONTINUE;
+            }
+            metrics.failed(e.getClass().getSimpleName());
+            if (checkpoint != null && checkpoint.skip(index, path.toString())) {
+                return FileVisitResult.CONTINUE;
+            }
+            return writeToFile(options.getAlgorithm().zero(), path);
         }
     }
 
 
-    private void start(String inputPath, String outputPath) {
+    private void walkRoot(CustomFileVisitor visitor, String dir) throws IOException {
+        try {
+            Files.walkFileTree(Paths.get(dir), options.getVisitOptions(), options.getFilter().getMaxDepth(), visitor);
+        } catch (InvalidPathException e) {
+            metrics.failed(e.getClass().getSimpleName());
+            if (checkpoint == null || !checkpoint.skip(visitor.index, dir)) {
+                if (checkpoint != null) {
+                    checkpoint.writing(visitor.index);
+                }
+                visitor.output.write(options.getAlgorithm().zero(), dir);
+                if (checkpoint != null) {
+                    checkpoint.written(visitor.index, dir);
+                }
+            }
+        }
+    }
+
+    public void start(String inputPath, String outputPath) {
         try {
             Path input = Paths.get(inputPath);
             Path output = Paths.get(outputPath);
@@ -64,23 +139,118 @@ public class RecursiveWalk {
                 Files.createDirectories(output.getParent());
             }
 
+            if (options.useCache()) {
+                cache = new HashCache(HashCache.forOutput(output), options.getAlgorithm(), options.getHashId());
+                cache.load();
+            }
+
+            if (options.getChunkSize() > 0) {
+                int parallelism = options.getThreads() > 1 ? options.getThreads() : Runtime.getRuntime().availableProcessors();
+                tree = new TreeHasher(options.getAlgorithm(), options.getChunkSize(), parallelism, TreeHasher.forOutput(output));
+                tree.load();
+            }
+
+            if (options.useInodes()) {
+                inodes = new InodeCache();
+            }
+
+            long totalRoots = 0;
+            if (options.getProgress() > 0) {
+                try (Stream<String> lines = Files.lines(input)) {
+                    totalRoots = lines.count();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                metrics.startProgress(options.getProgress(), totalRoots);
+            }
+            if (options.useJmx()) {
+                metrics.register();
+            }
+
+            boolean completed = false;
             try(BufferedReader reader = Files.newBufferedReader(input);
-                BufferedWriter writer = Files.newBufferedWriter(output)) {
+                WalkWriter writer = options.useDedup() ? null : openOutput(input, output)) {
 
 
                 String dir;
-                CustomFileVisitor visitor = new CustomFileVisitor(writer);
-                while ((dir = reader.readLine()) != null) {
-                    try {
-                        Files.walkFileTree(Paths.get(dir), visitor);
-                    } catch (InvalidPathException e) {
-                        writer.write("00000000 " + dir);
-                        writer.newLine();
+                long index = 0;
+                if (options.useDedup()) {
+                    try (BufferedWriter report = Files.newBufferedWriter(output)) {
+                        DuplicateFinder finder = new DuplicateFinder(options, metrics, this::hash);
+                        while ((dir = reader.readLine()) != null) {
+                            finder.walk(dir);
+                            metrics.rootDone();
+                        }
+                        finder.report(report);
+                    }
+                } else if (options.getAsyncReads() > 0) {
+                    try (AsyncHasher hasher = new AsyncHasher(options.getAlgorithm(), options.getAsyncReads());
+                         ParallelWalker walker = new ParallelWalker(options, writer, metrics, checkpoint,
+                                 this::hash, this::hashAsync)) {
+                        async = hasher;
+                        for (; (dir = reader.readLine()) != null; index++) {
+                            if (checkpoint == null || !checkpoint.skipRoot(index)) {
+                                hasher.setRoot(dir);
+                                walker.walk(index, dir);
+                            }
+                            metrics.rootDone();
+                        }
+                    }
+                } else if (options.getThreads() > 1) {
+                    try (ParallelWalker walker = new ParallelWalker(options, writer, metrics, checkpoint, this::hash)) {
+                        for (; (dir = reader.readLine()) != null; index++) {
+                            if (checkpoint == null || !checkpoint.skipRoot(index)) {
+                                walker.walk(index, dir);
+                            }
+                            metrics.rootDone();
+                        }
+                    }
+                } else {
+                    CustomFileVisitor visitor = new CustomFileVisitor(writer);
+                    for (; (dir = reader.readLine()) != null; index++) {
+                        if (checkpoint == null || !checkpoint.skipRoot(index)) {
+                            visitor.index = index;
+                            walkRoot(visitor, dir);
+                            if (checkpoint != null && checkpoint.rewind(index)) {
+                                walkRoot(visitor, dir);
+                            }
+                        }
+                        metrics.rootDone();
                     }
                 }
+                if (writer != null) {
+                    writer.finish();
+                }
+                completed = true;
 
             } catch (IOException e) {
                 System.out.println("Visitor exception " + e.getMessage());
+            } finally {
+                metrics.close();
+                if (options.getProgress() > 0) {
+                    System.err.println(metrics.progressLine(totalRoots));
+                }
+            }
+
+            if (completed && checkpoint != null) {
+                checkpoint.finish();
+            }
+
+            if (cache != null) {
+                try {
+                    cache.save();
+                } catch (IOException e) {
+                    System.out.println("Cannot save hash cache " + e.getMessage());
+                }
+            }
+
+            if (tree != null) {
+                tree.close();
+                try {
+                    tree.save();
+                } catch (IOException e) {
+                    System.out.println("Cannot save chunk hashes " + e.getMessage());
+                }
             }
 
         } catch (IOException | InvalidPathException e) {
@@ -88,29 +258,185 @@ public class RecursiveWalk {
         }
     }
 
-    private static final int FNV1 = 0x01000193;
-    private static final int FNV2 = 0x811c9dc5;
-
-    private static final int BUF_SIZE = 4096;
+    private WalkWriter openOutput(Path input, Path output) throws IOException {
+        if (options.getDiff() != null) {
+            Path previous = Paths.get(options.getDiff());
+            if (Files.exists(output) && Files.isSameFile(previous, output)) {
+                throw new IOException("Previous output cannot be overwritten " + previous);
+            }
+            WalkIndex index = WalkIndex.load(previous);
+            int hexLength = 2 * options.getAlgorithm().length();
+            if (index.getHexLength() >= 0 && index.getHexLength() != hexLength) {
+                index.close();
+                throw new IOException("Previous output has another hash algorithm " + previous);
+            }
+            try {
+                return new DiffWalkWriter(index, Files.newBufferedWriter(output));
+            } catch (IOException e) {
+                index.close();
+                throw e;
+            }
+        }
+        if (options.getCheckpoint() == 0 && !options.useBinary()) {
+            return new TextWalkWriter(Files.newBufferedWriter(output));
+        }
 
-    public static int getHash(Path path) {
-        int hash = FNV2;
-
-        try (FileInputStream inputStream = new FileInputStream(path.toString())) {
-            int read;
-            byte[] buf = new byte[BUF_SIZE];
-            while ((read = inputStream.read(buf)) != -1) {
-                for (int i = 0; i < read; i++) {
-                    hash *= FNV1;
-                    hash ^= buf[i] & 0xff;
-                }
+        if (options.getCheckpoint() > 0) {
+            checkpoint = new Checkpoint(Checkpoint.forOutput(output), options.getCheckpoint(),
+                    input, options.getHashId(), options.useBinary());
+        }
+        FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        String last = null;
+        try {
+            long offset = 0;
+            if (checkpoint != null && options.useResume() && checkpoint.load()) {
+                offset = checkpoint.getOffset();
+                last = checkpoint.getPath();
             }
+            channel.truncate(offset);
+            channel.position(offset);
         } catch (IOException e) {
-            hash = 0;
+            channel.close();
+            throw e;
         }
+        WalkWriter writer = options.useBinary()
+                ? new BinaryWalkWriter(channel, options.getAlgorithm(), last)
+                : new TextWalkWriter(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8)));
+        if (checkpoint != null) {
+            checkpoint.attach(channel, writer);
+        }
+        return writer;
+    }
+
+    private static final int BUF_SIZE = 1 << 16;
+    private static final long MAP_THRESHOLD = 1 << 20;
+    private static final long MAP_CHUNK = 1 << 26;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUF_SIZE));
+
+    private byte[] hash(Path path, BasicFileAttributes attrs) {
+        byte[] hash = inodes != null ? inodes.hash(path, attrs, this::readHash) : readHash(path, attrs);
+        keepChunks(path, attrs);
         return hash;
     }
-}
 
+    private void keepChunks(Path path, BasicFileAttributes attrs) {
+        if (tree != null && tree.applies(attrs.size())) {
+            tree.keep(path);
+        }
+    }
+
+    private byte[] readHash(Path path, BasicFileAttributes attrs) {
+        byte[] hash = cache != null ? cache.lookup(path, attrs) : null;
+        if (hash != null) {
+            metrics.cached();
+            return hash;
+        }
+        long start = System.nanoTime();
+        try {
+            hash = tree != null && tree.applies(attrs.size())
+                    ? tree.hash(path)
+                    : read(path, options.getAlgorithm(), Long.MAX_VALUE);
+        } catch (IOException e) {
+            metrics.failed(e.getClass().getSimpleName());
+        }
+        return hashed(path, attrs, hash, start);
+    }
+
+    private byte[] hashed(Path path, BasicFileAttributes attrs, byte[] hash, long start) {
+        if (hash != null) {
+            metrics.hashed(attrs.size(), System.nanoTime() - start);
+        }
+        if (cache != null) {
+            cache.put(path, attrs, hash);
+        }
+        return hash;
+    }
+
+    private CompletableFuture<byte[]> hashAsync(Path path, BasicFileAttributes attrs) {
+        CompletableFuture<byte[]> hash = inodes != null
+                ? inodes.hashAsync(path, attrs, this::readHashAsync)
+                : readHashAsync(path, attrs);
+        return hash.whenComplete((h, e) -> keepChunks(path, attrs));
+    }
+
+    private CompletableFuture<byte[]> readHashAsync(Path path, BasicFileAttributes attrs) {
+        byte[] cached = cache != null ? cache.lookup(path, attrs) : null;
+        if (cached != null) {
+            metrics.cached();
+            return CompletableFuture.completedFuture(cached);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<byte[]> read = tree != null && tree.applies(attrs.size())
+                ? async.hash(() -> tree.hash(path))
+                : async.hash(path);
+        return read.handle((hash, e) -> {
+            if (e != null) {
+                metrics.failed(e.getClass().getSimpleName());
+            }
+            return hashed(path, attrs, hash, start);
+        });
+    }
+
+    public WalkMetrics getMetrics() {
+        return metrics;
+    }
 
+    public static int getHash(Path path) {
+        byte[] hash = getHash(path, HashAlgorithm.FNV1);
+        return hash == null ? 0 : ByteBuffer.wrap(hash).getInt();
+    }
 
+    /**
+     * @return hash of the file, {@code null} if it cannot be read
+     */
+    public static byte[] getHash(Path path, HashAlgorithm algorithm) {
+        return getHash(path, algorithm, Long.MAX_VALUE);
+    }
+
+    /**
+     * Hashes at most {@code limit} first bytes of the file.
+     *
+     * @return hash of the prefix, {@code null} if the file cannot be read
+     */
+    public static byte[] getHash(Path path, HashAlgorithm algorithm, long limit) {
+        try {
+            return read(path, algorithm, limit);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static byte[] read(Path path, HashAlgorithm algorithm, long limit) throws IOException {
+        Hasher hasher = algorithm.hasher();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = Math.min(channel.size(), limit);
+            if (size >= MAP_THRESHOLD) {
+                while (position < size) {
+                    long length = Math.min(MAP_CHUNK, size - position);
+                    hasher.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                    position += length;
+                }
+            }
+
+            ByteBuffer buf = BUFFER.get();
+            while (position < limit) {
+                buf.clear();
+                buf.limit((int) Math.min(buf.capacity(), limit - position));
+                if (channel.read(buf, position) == -1) {
+                    break;
+                }
+                buf.flip();
+                position += buf.remaining();
+                hasher.update(buf);
+            }
+        } catch (InternalError e) {
+            // a mapped file truncated while it is read fails with InternalError
+            throw new IOException("File truncated while read " + path, e);
+        }
+        return hasher.digest();
+    }
+}
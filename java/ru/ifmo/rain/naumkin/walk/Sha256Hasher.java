@@ -0,0 +1,35 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 through {@link MessageDigest}.
+ */
+public class Sha256Hasher implements Hasher {
+    private final MessageDigest digest;
+
+    public Sha256Hasher() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    @Override
+    public void update(ByteBuffer buf) {
+        digest.update(buf);
+    }
+
+    @Override
+    public byte[] digest() {
+        return digest.digest();
+    }
+
+    @Override
+    public void reset() {
+        digest.reset();
+    }
+}
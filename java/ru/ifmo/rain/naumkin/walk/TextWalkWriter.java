@@ -0,0 +1,37 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+/**
+ * Original text output, one {@code hash path} line per file.
+ */
+public class TextWalkWriter implements WalkWriter {
+    private final BufferedWriter output;
+
+    public TextWalkWriter(BufferedWriter output) {
+        this.output = output;
+    }
+
+    @Override
+    public void write(byte[] hash, String name) throws IOException {
+        writeLine(output, hash, name);
+    }
+
+    static void writeLine(BufferedWriter output, byte[] hash, String name) throws IOException {
+        HashAlgorithm.writeHex(output, hash);
+        output.write(' ');
+        output.write(name);
+        output.newLine();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
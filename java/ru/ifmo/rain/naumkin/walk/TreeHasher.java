@@ -0,0 +1,213 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Merkle tree hash for files larger than one chunk. Fixed-size chunks are hashed in parallel,
+ * then pairs of hashes are hashed together level by level up to the root; an odd hash is carried
+ * to the next level unchanged. Chunk hashes are kept in a file next to the output, and when
+ * a file is hashed again the chunks that changed since the previous run are reported.
+ */
+public class TreeHasher implements AutoCloseable {
+    private static final int MAGIC = 0x57545245;
+    private static final long WINDOW = 1 << 30;
+
+    private final HashAlgorithm algorithm;
+    private final long chunkSize;
+    private final ForkJoinPool pool;
+    private final Path file;
+    private final Map<String, byte[][]> previous = new ConcurrentHashMap<>();
+    private final Map<String, byte[][]> current = new ConcurrentHashMap<>();
+
+    public TreeHasher(HashAlgorithm algorithm, long chunkSize, int parallelism, Path file) {
+        this.algorithm = algorithm;
+        this.chunkSize = chunkSize;
+        this.pool = new ForkJoinPool(parallelism);
+        this.file = file;
+    }
+
+    public static Path forOutput(Path output) {
+        return output.resolveSibling(output.getFileName() + ".chunks");
+    }
+
+    /**
+     * @return whether the file is split into chunks, smaller files are hashed as usual
+     */
+    public boolean applies(long size) {
+        return size > chunkSize;
+    }
+
+    public byte[] hash(Path path) throws IOException {
+        byte[][] chunks;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            chunks = new byte[(int) ((size + chunkSize - 1) / chunkSize)][];
+            pool.invoke(new ChunkTask(channel, size, chunks, 0, chunks.length));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (InternalError e) {
+            // a mapped chunk truncated while it is read fails with InternalError
+            throw new IOException("File truncated while read " + path, e);
+        }
+
+        String key = path.toString();
+        report(key, previous.get(key), chunks);
+        current.put(key, chunks);
+        return root(chunks);
+    }
+
+    /**
+     * Keeps chunk hashes of the previous run for a file whose hash was not computed by
+     * {@link #hash}, because it was served from a cache or by another link to the same file.
+     */
+    public void keep(Path path) {
+        String key = path.toString();
+        byte[][] chunks = previous.get(key);
+        if (chunks != null) {
+            current.putIfAbsent(key, chunks);
+        }
+    }
+
+    private class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long size;
+        private final byte[][] chunks;
+        private final int from;
+        private final int to;
+
+        ChunkTask(FileChannel channel, long size, byte[][] chunks, int from, int to) {
+            this.channel = channel;
+            this.size = size;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ChunkTask(channel, size, chunks, from, mid),
+                        new ChunkTask(channel, size, chunks, mid, to));
+                return;
+            }
+            long position = from * chunkSize;
+            long end = Math.min(position + chunkSize, size);
+            try {
+                // a mapping is limited to 2 GB, larger chunks are mapped in windows
+                Hasher hasher = algorithm.hasher();
+                for (; position < end; position += WINDOW) {
+                    hasher.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, end - position)));
+                }
+                chunks[from] = hasher.digest();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private byte[] root(byte[][] chunks) {
+        if (chunks.length == 0) {
+            return algorithm.hasher().digest();
+        }
+        byte[][] level = chunks;
+        while (level.length > 1) {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < next.length; i++) {
+                if (2 * i + 1 < level.length) {
+                    Hasher hasher = algorithm.hasher();
+                    hasher.update(ByteBuffer.wrap(level[2 * i]));
+                    hasher.update(ByteBuffer.wrap(level[2 * i + 1]));
+                    next[i] = hasher.digest();
+                } else {
+                    next[i] = level[2 * i];
+                }
+            }
+            level = next;
+        }
+        return level[0];
+    }
+
+    private static void report(String path, byte[][] before, byte[][] after) {
+        if (before == null) {
+            return;
+        }
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < Math.max(before.length, after.length); i++) {
+            if (i >= before.length || i >= after.length || !ByteBuffer.wrap(before[i]).equals(ByteBuffer.wrap(after[i]))) {
+                changed.add(i);
+            }
+        }
+        if (!changed.isEmpty()) {
+            System.err.println(path + ": " + changed.size() + " of " + after.length + " chunks changed " + changed);
+        }
+    }
+
+    public void load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || !algorithm.getName().equals(in.readUTF()) || in.readLong() != chunkSize) {
+                return;
+            }
+            while (true) {
+                String path;
+                try {
+                    path = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[][] chunks = new byte[in.readInt()][algorithm.length()];
+                for (byte[] chunk : chunks) {
+                    in.readFully(chunk);
+                }
+                previous.put(path, chunks);
+            }
+        } catch (NoSuchFileException ignored) {
+        } catch (IOException e) {
+            previous.clear();
+            System.out.println("Ignoring broken chunk hashes " + e.getMessage());
+        }
+    }
+
+    public void save() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(algorithm.getName());
+            out.writeLong(chunkSize);
+            for (Map.Entry<String, byte[][]> e : current.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeInt(e.getValue().length);
+                for (byte[] chunk : e.getValue()) {
+                    out.write(chunk);
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,78 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Include and exclude rules of a walk. Rules use {@link java.nio.file.FileSystem#getPathMatcher}
+ * syntax, {@code glob:} is assumed without a prefix, and a rule matches if it matches either the
+ * whole path or its last element. Excluded directories are pruned before they are read; include
+ * rules only select files, so they never prune directories.
+ */
+public class WalkFilter {
+    private final List<PathMatcher> includes = new ArrayList<>();
+    private final List<PathMatcher> excludes = new ArrayList<>();
+    private int maxDepth = Integer.MAX_VALUE;
+    private long maxSize = Long.MAX_VALUE;
+
+    void include(String rule) {
+        includes.add(matcher(rule));
+    }
+
+    void exclude(String rule) {
+        excludes.add(matcher(rule));
+    }
+
+    void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    private static PathMatcher matcher(String rule) {
+        return FileSystems.getDefault().getPathMatcher(rule.startsWith("glob:") || rule.startsWith("regex:")
+                ? rule : "glob:" + rule);
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path path) {
+        Path name = path.getFileName();
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path) || name != null && matcher.matches(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return maximum depth to pass to {@link java.nio.file.Files#walkFileTree}
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return {@code false} if the directory is excluded and its subtree is to be skipped
+     */
+    public boolean enter(Path dir) {
+        return excludes.isEmpty() || !matches(excludes, dir);
+    }
+
+    /**
+     * @param attrs attributes of the file, {@code null} if they could not be read
+     * @return whether the file is written to output
+     */
+    public boolean accept(Path file, BasicFileAttributes attrs) {
+        if (attrs != null && (attrs.isDirectory() || attrs.size() > maxSize)) {
+            return false;
+        }
+        return (excludes.isEmpty() || !matches(excludes, file))
+                && (includes.isEmpty() || matches(includes, file));
+    }
+}
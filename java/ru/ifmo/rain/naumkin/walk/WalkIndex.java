@@ -0,0 +1,303 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Previous {@link RecursiveWalk} output, searchable by path. The file stays memory-mapped, and
+ * line offsets sorted by UTF-8 path bytes are kept in memory-mapped temporary files next to it,
+ * so the heap holds only a bit per line marking lines already found. Binary output is converted
+ * to a temporary text file first.
+ */
+public class WalkIndex implements Closeable {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final long size;
+    private final List<Path> temps = new ArrayList<>();
+    private int hexLength = -1;
+    private LongArray lines;
+    private int count;
+    private final BitSet found = new BitSet();
+
+    /**
+     * Array of longs in a memory-mapped temporary file.
+     */
+    private static class LongArray {
+        private static final int SHIFT = SEGMENT_SHIFT - 3;
+        private static final int MASK = (1 << SHIFT) - 1;
+
+        private final LongBuffer[] segments;
+
+        LongArray(Path file, int length) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segments = new LongBuffer[(length + MASK) >>> SHIFT];
+                for (int i = 0; i < segments.length; i++) {
+                    long start = (long) i << SHIFT;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start * Long.BYTES,
+                            Math.min(MASK + 1, length - start) * Long.BYTES).asLongBuffer();
+                }
+            }
+        }
+
+        long get(int i) {
+            return segments[i >>> SHIFT].get(i & MASK);
+        }
+
+        void set(int i, long value) {
+            segments[i >>> SHIFT].put(i & MASK, value);
+        }
+    }
+
+    private WalkIndex(Path file, Path temp) throws IOException {
+        if (temp != null) {
+            temps.add(temp);
+        }
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                size = channel.size();
+                segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+                for (int i = 0; i < segments.length; i++) {
+                    long start = (long) i << SEGMENT_SHIFT;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_MASK + 1, size - start));
+                }
+            }
+            Path offsets = createTemp(file);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(offsets)))) {
+                scan(out);
+            }
+            lines = new LongArray(offsets, count);
+            sort(createTemp(file));
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private Path createTemp(Path file) throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".idx");
+        temps.add(temp);
+        return temp;
+    }
+
+    /**
+     * Indexes output in text or binary format.
+     */
+    public static WalkIndex load(Path file) throws IOException {
+        if (!isBinary(file)) {
+            return new WalkIndex(file, null);
+        }
+        Path text = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".txt");
+        try {
+            BinaryWalkReader.toText(file, text);
+            return new WalkIndex(text, text);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(text);
+            throw e;
+        }
+    }
+
+    private static boolean isBinary(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == BinaryWalkWriter.MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes offsets of lines in file order.
+     */
+    private void scan(DataOutputStream out) throws IOException {
+        long line = 0;
+        for (long position = 0; position < size; position++) {
+            if (get(position) == '\n') {
+                add(out, line, position);
+                line = position + 1;
+            }
+        }
+        if (line < size) {
+            add(out, line, size);
+        }
+    }
+
+    private void add(DataOutputStream out, long line, long end) throws IOException {
+        if (hexLength < 0) {
+            hexLength = 0;
+            while (line + hexLength < end && get(line + hexLength) != ' ') {
+                hexLength++;
+            }
+        }
+        if (end - line <= hexLength || get(line + hexLength) != ' ') {
+            throw new IOException("Wrong walk output line at " + line);
+        }
+        if (count == Integer.MAX_VALUE) {
+            throw new IOException("Too many walk output lines");
+        }
+        out.writeLong(line);
+        count++;
+    }
+
+    private byte get(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+    }
+
+    /**
+     * @return unsigned byte at the position of a path, -1 at the end of the line
+     */
+    private int pathByte(long position) {
+        if (position >= size) {
+            return -1;
+        }
+        byte b = get(position);
+        if (b == '\n' || b == '\r' && (position + 1 == size || get(position + 1) == '\n')) {
+            return -1;
+        }
+        return b & 0xff;
+    }
+
+    private int compare(long a, long b) {
+        a += hexLength + 1;
+        b += hexLength + 1;
+        while (true) {
+            int x = pathByte(a++);
+            int y = pathByte(b++);
+            if (x != y || x == -1) {
+                return Integer.compare(x, y);
+            }
+        }
+    }
+
+    private int compare(long line, byte[] path) {
+        long position = line + hexLength + 1;
+        for (int i = 0; ; i++) {
+            int x = pathByte(position++);
+            int y = i < path.length ? path[i] & 0xff : -1;
+            if (x != y || x == -1) {
+                return Integer.compare(x, y);
+            }
+        }
+    }
+
+    /**
+     * Merge sort of line offsets between the mapped offset file and another one of the same size.
+     */
+    private void sort(Path buffer) throws IOException {
+        LongArray from = lines;
+        LongArray to = new LongArray(buffer, count);
+        for (long width = 1; width < count; width *= 2) {
+            for (long left = 0; left < count; left += 2 * width) {
+                int mid = (int) Math.min(left + width, count);
+                int right = (int) Math.min(left + 2 * width, count);
+                int i = (int) left;
+                int j = mid;
+                for (int k = (int) left; k < right; k++) {
+                    to.set(k, i < mid && (j == right || compare(from.get(i), from.get(j)) <= 0) ? from.get(i++) : from.get(j++));
+                }
+            }
+            LongArray t = from;
+            from = to;
+            to = t;
+        }
+        lines = from;
+    }
+
+    /**
+     * @return length of hashes in hexadecimal digits, -1 if the output is empty
+     */
+    public int getHexLength() {
+        return hexLength;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Finds the first line for the path not found before and marks it found.
+     *
+     * @return index of the line, -1 if there is none
+     */
+    public int find(String path) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(lines.get(mid), bytes) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < count && compare(lines.get(i), bytes) == 0; i++) {
+            if (!found.get(i)) {
+                found.set(i);
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isFound(int entry) {
+        return found.get(entry);
+    }
+
+    public boolean sameHash(int entry, byte[] hash) {
+        if (2 * hash.length != hexLength) {
+            return false;
+        }
+        long line = lines.get(entry);
+        for (int i = 0; i < hash.length; i++) {
+            int high = Character.digit(get(line + 2 * i), 16);
+            int low = Character.digit(get(line + 2 * i + 1), 16);
+            if (high < 0 || low < 0 || (high << 4 | low) != (hash[i] & 0xff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String hex(int entry) {
+        return decode(lines.get(entry), hexLength);
+    }
+
+    public String path(int entry) {
+        long start = lines.get(entry) + hexLength + 1;
+        int length = 0;
+        while (pathByte(start + length) != -1) {
+            length++;
+        }
+        return decode(start, length);
+    }
+
+    private String decode(long start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Path temp : temps) {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
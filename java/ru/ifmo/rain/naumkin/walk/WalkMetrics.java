@@ -0,0 +1,190 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of a {@link RecursiveWalk} run. They can be exported through JMX and printed
+ * to {@code System.err} periodically. A walk with low {@link #getCpuLoad() CPU load} and
+ * long per-file latencies waits for I/O, a walk near full CPU load is limited by hashing.
+ */
+public class WalkMetrics implements WalkMetricsMXBean {
+    private static final int BUCKETS = 32;
+
+    private final long started = System.nanoTime();
+    private final long startedCpu = processCpuTime();
+    private final LongAdder visited = new LongAdder();
+    private final LongAdder hashed = new LongAdder();
+    private final LongAdder cached = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder roots = new LongAdder();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+
+    private ScheduledExecutorService progress;
+    private ObjectName name;
+
+    public void visited() {
+        visited.increment();
+    }
+
+    public void cached() {
+        cached.increment();
+    }
+
+    public void hashed(long size, long nanos) {
+        hashed.increment();
+        bytes.add(size);
+        long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+        latencies.incrementAndGet(Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros)));
+    }
+
+    public void failed(String cause) {
+        failures.computeIfAbsent(cause, c -> new LongAdder()).increment();
+    }
+
+    public void rootDone() {
+        roots.increment();
+    }
+
+    @Override
+    public long getFilesVisited() {
+        return visited.sum();
+    }
+
+    @Override
+    public long getFilesHashed() {
+        return hashed.sum();
+    }
+
+    @Override
+    public long getFilesCached() {
+        return cached.sum();
+    }
+
+    @Override
+    public long getBytesHashed() {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return bytes.sum() * 1e9 / Math.max(1, System.nanoTime() - started);
+    }
+
+    @Override
+    public double getCpuLoad() {
+        long cpu = processCpuTime();
+        if (cpu < 0 || startedCpu < 0) {
+            return -1;
+        }
+        long wall = Math.max(1, System.nanoTime() - started);
+        return (double) (cpu - startedCpu) / wall / Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public Map<String, Long> getFailures() {
+        Map<String, Long> result = new TreeMap<>();
+        failures.forEach((cause, count) -> result.put(cause, count.sum()));
+        return result;
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = latencies.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public long getRootsDone() {
+        return roots.sum();
+    }
+
+    private static long processCpuTime() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName("ru.ifmo.rain.naumkin.walk:type=WalkMetrics");
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            name = null;
+            System.err.println("Cannot register walk metrics " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts printing a progress line every {@code seconds} seconds.
+     *
+     * @param totalRoots number of input lines, used for the estimate of remaining time
+     */
+    public void startProgress(int seconds, long totalRoots) {
+        progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "walk-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> System.err.println(progressLine(totalRoots)),
+                seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    String progressLine(long totalRoots) {
+        long elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started);
+        long done = getRootsDone();
+        StringBuilder line = new StringBuilder("walk: ")
+                .append(getFilesVisited()).append(" files, ")
+                .append(getBytesHashed() >> 20).append(" MB, ")
+                .append(String.format("%.1f MB/s", getBytesPerSecond() / (1 << 20)));
+        if (getFilesCached() > 0) {
+            line.append(", ").append(getFilesCached()).append(" cached");
+        }
+        long failed = failures.values().stream().mapToLong(LongAdder::sum).sum();
+        if (failed > 0) {
+            line.append(", ").append(failed).append(" failed");
+        }
+        double cpu = getCpuLoad();
+        if (cpu >= 0) {
+            line.append(String.format(", cpu %.0f%%", cpu * 100));
+        }
+        line.append(", roots ").append(done).append('/').append(totalRoots);
+        if (done > 0 && done < totalRoots) {
+            long eta = elapsed * (totalRoots - done) / done;
+            line.append(String.format(", eta %d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60));
+        }
+        return line.toString();
+    }
+
+    public void close() {
+        if (progress != null) {
+            progress.shutdownNow();
+            progress = null;
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException ignored) {
+            }
+            name = null;
+        }
+    }
+}
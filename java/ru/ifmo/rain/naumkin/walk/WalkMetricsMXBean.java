@@ -0,0 +1,36 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link WalkMetrics}.
+ */
+public interface WalkMetricsMXBean {
+    long getFilesVisited();
+
+    long getFilesHashed();
+
+    long getFilesCached();
+
+    long getBytesHashed();
+
+    double getBytesPerSecond();
+
+    /**
+     * @return share of available processor time used by the process since the walk started,
+     * or a negative value if the platform does not report it
+     */
+    double getCpuLoad();
+
+    /**
+     * @return failed files by cause
+     */
+    Map<String, Long> getFailures();
+
+    /**
+     * @return number of files whose hashing took from {@code 2^i} to {@code 2^(i+1)} microseconds
+     */
+    long[] getLatencyHistogram();
+
+    long getRootsDone();
+}
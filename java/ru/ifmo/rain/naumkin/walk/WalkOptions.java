@@ -0,0 +1,230 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.nio.file.FileVisitOption;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Optional command line switches of {@link RecursiveWalk}, given after input and output files.
+ */
+public class WalkOptions {
+    private static final int DEFAULT_CHECKPOINT = 60;
+
+    private int threads = 1;
+    private boolean cache = false;
+    private HashAlgorithm algorithm = HashAlgorithm.FNV1;
+    private boolean inodes = false;
+    private boolean dedup = false;
+    private boolean binary = false;
+    private String diff;
+    private int asyncReads = 0;
+    private int progress = 0;
+    private boolean jmx = false;
+    private int checkpoint = 0;
+    private boolean resume = false;
+    private long chunkSize = 0;
+    private Set<FileVisitOption> visitOptions = Collections.emptySet();
+    private final WalkFilter filter = new WalkFilter();
+
+    public static WalkOptions parse(String[] args, int from) {
+        WalkOptions options = new WalkOptions();
+        for (int i = from; i < args.length; i++) {
+            if (args[i] == null) {
+                throw new IllegalArgumentException("Wrong input.");
+            }
+            switch (args[i]) {
+                case "-j":
+                case "--threads":
+                    options.threads = parsePositive(args, ++i, "number of threads");
+                    break;
+                case "--hash":
+                    options.algorithm = HashAlgorithm.forName(value(args, ++i, "hash algorithm"));
+                    break;
+                case "--cache":
+                    options.cache = true;
+                    break;
+                case "--inodes":
+                    options.inodes = true;
+                    break;
+                case "--async":
+                    options.asyncReads = parsePositive(args, ++i, "number of reads per device");
+                    break;
+                case "--progress":
+                    options.progress = parsePositive(args, ++i, "progress interval");
+                    break;
+                case "--jmx":
+                    options.jmx = true;
+                    break;
+                case "--checkpoint":
+                    options.checkpoint = parsePositive(args, ++i, "checkpoint interval");
+                    break;
+                case "--resume":
+                    options.resume = true;
+                    break;
+                case "--tree-hash":
+                    options.chunkSize = (long) parsePositive(args, ++i, "chunk size in megabytes") << 20;
+                    break;
+                case "--dedup":
+                    options.dedup = true;
+                    break;
+                case "--binary":
+                    options.binary = true;
+                    break;
+                case "--diff":
+                    options.diff = value(args, ++i, "previous output");
+                    break;
+                case "--include":
+                    options.filter.include(value(args, ++i, "include rule"));
+                    break;
+                case "--exclude":
+                    options.filter.exclude(value(args, ++i, "exclude rule"));
+                    break;
+                case "--max-depth":
+                    options.filter.setMaxDepth(parsePositive(args, ++i, "maximum depth"));
+                    break;
+                case "--max-size":
+                    options.filter.setMaxSize(parseSize(args, ++i, "maximum file size"));
+                    break;
+                case "--follow-links":
+                    options.visitOptions = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (options.binary && options.dedup) {
+            throw new IllegalArgumentException("Duplicate report has no binary format");
+        }
+        if (options.diff != null && (options.binary || options.dedup || options.checkpoint > 0 || options.resume)) {
+            throw new IllegalArgumentException("Diff mode cannot be combined with binary, duplicate or checkpoint modes");
+        }
+        if (options.resume && options.checkpoint == 0) {
+            options.checkpoint = DEFAULT_CHECKPOINT;
+        }
+        return options;
+    }
+
+    private static String value(String[] args, int i, String name) {
+        if (i >= args.length || args[i] == null) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return args[i];
+    }
+
+    private static int parsePositive(String[] args, int i, String name) {
+        String value = value(args, i, name);
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Wrong " + name + ": " + value);
+    }
+
+    private static long parseSize(String[] args, int i, String name) {
+        String value = value(args, i, name);
+        try {
+            long result = Long.parseLong(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Wrong " + name + ": " + value);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public boolean useCache() {
+        return cache;
+    }
+
+    public boolean useInodes() {
+        return inodes;
+    }
+
+    /**
+     * @return limit of asynchronous reads in flight per device, 0 if reads are blocking
+     */
+    public int getAsyncReads() {
+        return asyncReads;
+    }
+
+    /**
+     * @return seconds between progress lines on {@code System.err}, 0 if progress is not printed
+     */
+    public int getProgress() {
+        return progress;
+    }
+
+    public boolean useJmx() {
+        return jmx;
+    }
+
+    /**
+     * @return seconds between checkpoints, 0 if checkpoints are not saved
+     */
+    public int getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @return whether to continue from the checkpoint of an interrupted run
+     */
+    public boolean useResume() {
+        return resume;
+    }
+
+    /**
+     * @return chunk size in bytes for Merkle tree hashing of large files, 0 if it is not used
+     */
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return description of how hashes are computed, to tell apart cached results
+     */
+    public String getHashId() {
+        return chunkSize == 0 ? algorithm.getName() : algorithm.getName() + "/tree-" + chunkSize;
+    }
+
+    public boolean useDedup() {
+        return dedup;
+    }
+
+    /**
+     * @return whether to write output in the format of {@link BinaryWalkWriter}
+     */
+    public boolean useBinary() {
+        return binary;
+    }
+
+    /**
+     * @return options for {@link java.nio.file.Files#walkFileTree}; symbolic link loops found
+     * while following links are skipped without an output line
+     */
+    public Set<FileVisitOption> getVisitOptions() {
+        return visitOptions;
+    }
+
+    /**
+     * @return previous output to write differences from, {@code null} if the whole output is written
+     */
+    public String getDiff() {
+        return diff;
+    }
+
+    public WalkFilter getFilter() {
+        return filter;
+    }
+}
@@ -0,0 +1,26 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Destination of {@link RecursiveWalk} results, one call per file in output order.
+ */
+public interface WalkWriter extends Closeable, Flushable {
+    void write(byte[] hash, String name) throws IOException;
+
+    /**
+     * Called after the output file is truncated to the end of an earlier entry.
+     *
+     * @param last path of the last entry left in the file, {@code null} if there is none
+     */
+    default void truncated(String last) {
+    }
+
+    /**
+     * Called once after all roots are walked, before {@link #close}. Not called if the walk fails.
+     */
+    default void finish() throws IOException {
+    }
+}
@@ -0,0 +1,169 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.runners.MethodSorters;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Resumes {@link RecursiveWalk} from a checkpoint written as if the run was interrupted after
+ * a given line of its output.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CheckpointTest {
+    private static final Path DIR = Paths.get("__Test__Checkpoint__");
+    private static final int FILES = 50;
+    private static final int SAVED = 20;
+
+    @Rule
+    public TestName name = new TestName();
+
+    private Path input;
+    private Path output;
+    private List<String> expected;
+
+    @Before
+    public void walkTree() throws IOException {
+        Path root = DIR.resolve(name.getMethodName());
+        clean(root);
+        Random random = new Random(name.getMethodName().hashCode());
+        for (int i = 0; i < FILES; i++) {
+            byte[] data = new byte[random.nextInt(100)];
+            random.nextBytes(data);
+            Path file = root.resolve("d" + i % 5).resolve("f" + i);
+            Files.createDirectories(file.getParent());
+            Files.write(file, data);
+        }
+        input = DIR.resolve(name.getMethodName() + ".in");
+        output = DIR.resolve(name.getMethodName() + ".out");
+        Files.writeString(input, root + System.lineSeparator());
+        RecursiveWalk.main(new String[]{input.toString(), output.toString()});
+        expected = Files.readAllLines(output);
+        Assert.assertEquals(FILES, expected.size());
+    }
+
+    @AfterClass
+    public static void cleanAll() throws IOException {
+        clean(DIR);
+    }
+
+    @Test
+    public void test01_resume() throws IOException {
+        interrupt(false);
+        resume();
+        Assert.assertEquals(expected, Files.readAllLines(output));
+    }
+
+    @Test
+    public void test02_deletedFile() throws IOException {
+        interrupt(false);
+        Files.delete(Paths.get(path(expected.remove(SAVED - 1))));
+        resume();
+        Assert.assertEquals(expected, Files.readAllLines(output));
+    }
+
+    @Test
+    public void test03_deletedFileBinary() throws IOException {
+        interrupt(true);
+        Files.delete(Paths.get(path(expected.remove(SAVED - 1))));
+        resume("--binary");
+        Path text = DIR.resolve(name.getMethodName() + ".txt");
+        BinaryWalkReader.toText(output, text);
+        Assert.assertEquals(expected, Files.readAllLines(text));
+    }
+
+    @Test
+    public void test04_deletedFileParallel() throws IOException {
+        interrupt(false);
+        Files.delete(Paths.get(path(expected.remove(SAVED - 1))));
+        resume("-j", "4");
+        Assert.assertEquals(expected, Files.readAllLines(output));
+    }
+
+    @Test
+    public void test05_otherRun() throws IOException {
+        interrupt(false);
+        List<String> interrupted = Files.readAllLines(output);
+        for (String[] options : List.of(new String[]{"--hash", "sha256"}, new String[]{"--binary"})) {
+            List<String> args = new ArrayList<>(List.of(input.toString(), output.toString(), "--resume"));
+            args.addAll(List.of(options));
+            RecursiveWalk.main(args.toArray(new String[0]));
+            Assert.assertTrue("Checkpoint of another run is used", Files.exists(Checkpoint.forOutput(output)));
+            Assert.assertEquals(interrupted, Files.readAllLines(output));
+        }
+    }
+
+    /**
+     * Writes the first {@link #SAVED} lines of the expected output with a checkpoint after every
+     * line, and a few more lines after the last checkpoint.
+     */
+    private void interrupt(boolean binary) throws IOException {
+        FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        WalkWriter writer = binary
+                ? new BinaryWalkWriter(channel, HashAlgorithm.FNV1, null)
+                : new TextWalkWriter(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8)));
+        try (writer) {
+            Checkpoint checkpoint = new Checkpoint(Checkpoint.forOutput(output), 0,
+                    input, HashAlgorithm.FNV1.getName(), binary);
+            checkpoint.attach(channel, writer);
+            for (int i = 0; i < SAVED + 5; i++) {
+                String line = expected.get(i);
+                if (i < SAVED) {
+                    checkpoint.writing(0);
+                }
+                writer.write(parseHex(line.substring(0, line.indexOf(' '))), path(line));
+                if (i < SAVED) {
+                    checkpoint.written(0, path(line));
+                }
+            }
+        }
+    }
+
+    private void resume(String... options) {
+        List<String> args = new ArrayList<>(List.of(input.toString(), output.toString(), "--resume"));
+        args.addAll(List.of(options));
+        RecursiveWalk.main(args.toArray(new String[0]));
+        Assert.assertFalse("Checkpoint is left after the run", Files.exists(Checkpoint.forOutput(output)));
+    }
+
+    private static byte[] parseHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static String path(String line) {
+        return line.substring(line.indexOf(' ') + 1);
+    }
+
+    private static void clean(Path root) throws IOException {
+        if (Files.exists(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ru.ifmo.rain.naumkin.walk;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Runs {@link RecursiveWalk} with {@code --tree-hash} several times over the same file and
+ * checks that chunk hashes survive runs where the file is served from the hash cache.
+ */
+public class TreeHashTest {
+    private static final Path DIR = Paths.get("__Test__TreeHash__");
+    private static final int MB = 1 << 20;
+
+    private Path file;
+    private Path input;
+    private Path output;
+
+    @Before
+    public void createFile() throws IOException {
+        clean();
+        file = DIR.resolve("root").resolve("big");
+        Files.createDirectories(file.getParent());
+        byte[] data = new byte[5 * MB / 2];
+        new Random(1).nextBytes(data);
+        Files.write(file, data);
+        input = DIR.resolve("input");
+        output = DIR.resolve("output");
+        Files.writeString(input, file.getParent() + System.lineSeparator());
+    }
+
+    @After
+    public void clean() throws IOException {
+        if (Files.exists(DIR)) {
+            try (Stream<Path> paths = Files.walk(DIR)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cachedRunKeepsChunks() throws IOException {
+        walk("--cache");
+        long saved = Files.size(TreeHasher.forOutput(output));
+        Assert.assertEquals("", walk("--cache"));
+        Assert.assertEquals("Chunk hashes of a cached file are dropped",
+                saved, Files.size(TreeHasher.forOutput(output)));
+
+        byte[] data = Files.readAllBytes(file);
+        data[3 * MB / 2]++;
+        Files.write(file, data);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 10_000));
+        Assert.assertEquals(file + ": 1 of 3 chunks changed [1]", walk("--cache").trim());
+    }
+
+    /**
+     * @return what the walk reported to {@link System#err}
+     */
+    private String walk(String... options) {
+        String[] args = new String[options.length + 4];
+        args[0] = input.toString();
+        args[1] = output.toString();
+        args[2] = "--tree-hash";
+        args[3] = "1";
+        System.arraycopy(options, 0, args, 4, options.length);
+
+        PrintStream err = System.err;
+        ByteArrayOutputStream reported = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(reported, true));
+        try {
+            RecursiveWalk.main(args);
+        } finally {
+            System.setErr(err);
+        }
+        return reported.toString();
+    }
+}